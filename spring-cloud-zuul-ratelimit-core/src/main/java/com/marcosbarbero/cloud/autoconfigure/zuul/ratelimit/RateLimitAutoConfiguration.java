@@ -23,30 +23,50 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyG
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Consul;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Consul.Codec;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Jpa.Batching;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Redis.NearCache;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.WriteBehind;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.AggregatingConsulRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BinaryRateCodec;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ConsulRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.DefaultRateLimiterErrorHandler;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.JacksonRateCodec;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.NearCacheRedisRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.OffHeapRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateCodec;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ReactiveRedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jHazelcastRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jIgniteRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jInfinispanRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jJCacheRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.BatchingJpaRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.ExpiredRateCleaner;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.JpaRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.RateLimiterRepository;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPostFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPreFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.HashingRateLimitKeyGeneratorPostProcessor;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.SecuredRateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.StringToMatchTypeConverter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueue;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueueMetrics;
 import com.netflix.zuul.ZuulFilter;
 import io.github.bucket4j.grid.GridBucketState;
 import io.github.bucket4j.grid.hazelcast.Hazelcast;
 import io.github.bucket4j.grid.ignite.Ignite;
 import io.github.bucket4j.grid.infinispan.Infinispan;
 import io.github.bucket4j.grid.jcache.JCache;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.ignite.IgniteCache;
 import org.infinispan.functional.FunctionalMap.ReadWriteMap;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -61,8 +81,12 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.cache.Cache;
@@ -103,9 +127,10 @@ public class RateLimitAutoConfiguration {
     @Bean
     public ZuulFilter rateLimiterPostFilter(final RateLimiter rateLimiter, final RateLimitProperties rateLimitProperties,
                                             final RouteLocator routeLocator, final RateLimitKeyGenerator rateLimitKeyGenerator,
-                                            final RateLimitUtils rateLimitUtils) {
+                                            final RateLimitUtils rateLimitUtils,
+                                            final ObjectProvider<WriteBehindQuotaQueue> writeBehindQuotaQueue) {
         return new RateLimitPostFilter(rateLimitProperties, routeLocator, URL_PATH_HELPER, rateLimiter,
-                rateLimitKeyGenerator, rateLimitUtils);
+                rateLimitKeyGenerator, rateLimitUtils, writeBehindQuotaQueue.getIfAvailable());
     }
 
     @Bean
@@ -115,6 +140,12 @@ public class RateLimitAutoConfiguration {
         return new DefaultRateLimitKeyGenerator(properties, rateLimitUtils);
     }
 
+    @Bean
+    public static HashingRateLimitKeyGeneratorPostProcessor hashingRateLimitKeyGeneratorPostProcessor(
+            final ObjectProvider<RateLimitProperties> properties) {
+        return new HashingRateLimitKeyGeneratorPostProcessor(properties);
+    }
+
     @Configuration
     @ConditionalOnMissingBean(RateLimitUtils.class)
     public static class RateLimitUtilsConfiguration {
@@ -132,6 +163,28 @@ public class RateLimitAutoConfiguration {
         }
     }
 
+    @Configuration
+    @ConditionalOnProperty(prefix = PREFIX, name = "write-behind.enabled", havingValue = "true")
+    public static class WriteBehindConfiguration {
+
+        @Bean
+        public WriteBehindQuotaQueue writeBehindQuotaQueue(final RateLimiter rateLimiter,
+                                                           final RateLimitProperties rateLimitProperties) {
+            WriteBehind writeBehind = rateLimitProperties.getWriteBehind();
+            return new WriteBehindQuotaQueue(rateLimiter, writeBehind.getCapacity(), writeBehind.getFlushInterval());
+        }
+
+        @Configuration
+        @ConditionalOnClass(MeterRegistry.class)
+        public static class WriteBehindMetricsConfiguration {
+
+            @Bean
+            public WriteBehindQuotaQueueMetrics writeBehindQuotaQueueMetrics(final WriteBehindQuotaQueue writeBehindQuotaQueue) {
+                return new WriteBehindQuotaQueueMetrics(writeBehindQuotaQueue);
+            }
+        }
+    }
+
     @Configuration
     @ConditionalOnClass(StringRedisTemplate.class)
     @ConditionalOnMissingBean(RateLimiter.class)
@@ -139,6 +192,7 @@ public class RateLimitAutoConfiguration {
     public static class RedisConfiguration {
 
         private static final String REDIS_TEMPLATE_BEAN_NAME = "rateLimiterRedisTemplate";
+        private static final String REACTOR_CLASS_NAME = "reactor.core.publisher.Flux";
 
         @Bean(REDIS_TEMPLATE_BEAN_NAME)
         @Qualifier(REDIS_TEMPLATE_BEAN_NAME)
@@ -148,9 +202,29 @@ public class RateLimitAutoConfiguration {
 
         @Bean
         public RateLimiter redisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
-                                            @Qualifier(REDIS_TEMPLATE_BEAN_NAME) final StringRedisTemplate redisTemplate) {
+                                            @Qualifier(REDIS_TEMPLATE_BEAN_NAME) final StringRedisTemplate redisTemplate,
+                                            final RateLimitProperties rateLimitProperties) {
+            NearCache nearCache = rateLimitProperties.getRedis().getNearCache();
+            if (nearCache.isEnabled()) {
+                return new NearCacheRedisRateLimiter(rateLimiterErrorHandler, redisTemplate,
+                        nearCache.getLeaseShare(), nearCache.getSyncInterval());
+            }
+            RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+            if (rateLimitProperties.getRedis().getReactive().isEnabled()
+                    && connectionFactory instanceof ReactiveRedisConnectionFactory
+                    && ClassUtils.isPresent(REACTOR_CLASS_NAME, getClass().getClassLoader())) {
+                return reactiveRedisRateLimiter(rateLimiterErrorHandler, redisTemplate,
+                        (ReactiveRedisConnectionFactory) connectionFactory);
+            }
             return new RedisRateLimiter(rateLimiterErrorHandler, redisTemplate);
         }
+
+        private static RateLimiter reactiveRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                                            final StringRedisTemplate redisTemplate,
+                                                            final ReactiveRedisConnectionFactory connectionFactory) {
+            return new ReactiveRedisRateLimiter(rateLimiterErrorHandler, redisTemplate,
+                    new ReactiveStringRedisTemplate(connectionFactory));
+        }
     }
 
     @Configuration
@@ -161,8 +235,17 @@ public class RateLimitAutoConfiguration {
 
         @Bean
         public RateLimiter consultRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
-                                              final ConsulClient consulClient, final ObjectMapper objectMapper) {
-            return new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, objectMapper);
+                                              final ConsulClient consulClient, final ObjectMapper objectMapper,
+                                              final RateLimitProperties rateLimitProperties) {
+            Consul consul = rateLimitProperties.getConsul();
+            RateCodec jsonCodec = new JacksonRateCodec(objectMapper);
+            RateCodec rateCodec = consul.getCodec() == Codec.BINARY ? new BinaryRateCodec(jsonCodec) : jsonCodec;
+            if (consul.getAggregation().isEnabled()) {
+                return new AggregatingConsulRateLimiter(rateLimiterErrorHandler, consulClient, rateCodec,
+                        consul.getCasRetries(), consul.getCasBackoff(), consul.getAggregation().getFlushInterval());
+            }
+            return new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, rateCodec,
+                    consul.getCasRetries(), consul.getCasBackoff());
         }
 
     }
@@ -215,6 +298,28 @@ public class RateLimitAutoConfiguration {
         }
     }
 
+    @Configuration
+    @ConditionalOnMissingBean(RateLimiter.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "repository", havingValue = "IN_MEMORY")
+    public static class InMemoryConfiguration {
+
+        @Bean
+        public RateLimiter inMemoryRateLimiter(final RateLimitProperties rateLimitProperties) {
+            return new InMemoryRateLimiter(rateLimitProperties.getInMemory().getEvictionInterval());
+        }
+    }
+
+    @Configuration
+    @ConditionalOnMissingBean(RateLimiter.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "repository", havingValue = "OFF_HEAP")
+    public static class OffHeapConfiguration {
+
+        @Bean
+        public RateLimiter offHeapRateLimiter(final RateLimitProperties rateLimitProperties) {
+            return new OffHeapRateLimiter(rateLimitProperties.getOffHeap().getCapacity());
+        }
+    }
+
     @EntityScan
     @Configuration
     @EnableJpaRepositories(basePackages = "com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata")
@@ -224,10 +329,23 @@ public class RateLimitAutoConfiguration {
 
         @Bean
         public RateLimiter springDataRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
-                                                 final RateLimiterRepository rateLimiterRepository) {
+                                                 final RateLimiterRepository rateLimiterRepository,
+                                                 final PlatformTransactionManager transactionManager,
+                                                 final RateLimitProperties rateLimitProperties) {
+            Batching batching = rateLimitProperties.getJpa().getBatching();
+            if (batching.isEnabled()) {
+                return new BatchingJpaRateLimiter(rateLimiterErrorHandler, rateLimiterRepository, transactionManager,
+                        batching.getMaxDrift(), batching.getFlushInterval());
+            }
             return new JpaRateLimiter(rateLimiterErrorHandler, rateLimiterRepository);
         }
 
+        @Bean
+        public ExpiredRateCleaner expiredRateCleaner(final RateLimiterRepository rateLimiterRepository,
+                                                     final RateLimitProperties rateLimitProperties) {
+            return new ExpiredRateCleaner(rateLimiterRepository, rateLimitProperties.getJpa().getCleanupInterval());
+        }
+
     }
 
 }
@@ -18,6 +18,11 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 /**
  * @author Marcos Barbero
  * @author Liel Chayoun
@@ -34,4 +39,69 @@ public interface RateLimiter {
      * @return a view of a user's rate request limit
      */
     Rate consume(Policy policy, String key, Long requestTime);
+
+    /**
+     * Consumes every policy matching a request at once. Implementations backed by a remote store may override it to
+     * evaluate all policies in a single round trip, by default they are consumed one after the other.
+     *
+     * <p>When consuming the limits of a request, without a request time, the policies following the first exceeded
+     * one are left untouched, as the request is rejected anyway. Implementations evaluating them along with the
+     * others give their usage back.</p>
+     *
+     * @param policies    Templates for which rates should be created, in the same order as their keys
+     * @param keys        Unique keys that identify the request for each policy
+     * @param requestTime The total time it took to handle the request
+     * @return a view of the user's rate request limit for each policy, in the order of the given policies, ending
+     * with the first exceeded one when consuming the limits of a request
+     */
+    default List<Rate> consumeAll(List<Policy> policies, List<String> keys, Long requestTime) {
+        List<Rate> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            Rate rate = consume(policies.get(i), keys.get(i), requestTime);
+            rates.add(rate);
+            if (requestTime == null && isExceeded(policies.get(i), rate)) {
+                break;
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * @param policy Template the rate was created for
+     * @param rate   View of a user's rate request limit
+     * @return whether the rate exceeds the limit or the quota of the policy
+     */
+    static boolean isExceeded(Policy policy, Rate rate) {
+        return (policy.getLimit() != null && rate.getRemaining() < 0)
+                || (policy.getQuota() != null && rate.getRemainingQuota() < 0);
+    }
+
+    /**
+     * Asynchronous variant of {@link #consume(Policy, String, Long)}. Implementations backed by a store with a
+     * non-blocking client may override it to release the calling thread, by default the rate is consumed on the
+     * calling thread.
+     *
+     * @param policy      Template for which rates should be created in case there's no rate limit associated with the
+     *                    key
+     * @param key         Unique key that identifies a request
+     * @param requestTime The total time it took to handle the request
+     * @return a stage completed with a view of a user's rate request limit
+     */
+    default CompletionStage<Rate> consumeAsync(Policy policy, String key, Long requestTime) {
+        return CompletableFuture.completedFuture(consume(policy, key, requestTime));
+    }
+
+    /**
+     * Asynchronous variant of {@link #consumeAll(List, List, Long)}, by default the rates are consumed on the calling
+     * thread.
+     *
+     * @param policies    Templates for which rates should be created, in the same order as their keys
+     * @param keys        Unique keys that identify the request for each policy
+     * @param requestTime The total time it took to handle the request
+     * @return a stage completed with a view of the user's rate request limit for each policy, in the order of the given
+     * policies
+     */
+    default CompletionStage<List<Rate>> consumeAllAsync(List<Policy> policies, List<String> keys, Long requestTime) {
+        return CompletableFuture.completedFuture(consumeAll(policies, keys, requestTime));
+    }
 }
@@ -33,6 +33,10 @@ import org.springframework.validation.annotation.Validated;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
@@ -78,6 +82,10 @@ public class RateLimitProperties {
     @Value("${spring.application.name:rate-limit-application}")
     private String keyPrefix;
 
+    @Valid
+    @NestedConfigurationProperty
+    private KeyHashing keyHashing = new KeyHashing();
+
     @NotNull
     private RateLimitRepository repository;
 
@@ -88,6 +96,29 @@ public class RateLimitProperties {
     @NestedConfigurationProperty
     private DenyRequest denyRequest = new DenyRequest();
 
+    @NestedConfigurationProperty
+    private InMemory inMemory = new InMemory();
+
+    @Valid
+    @NestedConfigurationProperty
+    private OffHeap offHeap = new OffHeap();
+
+    @Valid
+    @NestedConfigurationProperty
+    private Redis redis = new Redis();
+
+    @Valid
+    @NestedConfigurationProperty
+    private Consul consul = new Consul();
+
+    @Valid
+    @NestedConfigurationProperty
+    private Jpa jpa = new Jpa();
+
+    @Valid
+    @NestedConfigurationProperty
+    private WriteBehind writeBehind = new WriteBehind();
+
     public List<Policy> getPolicies(String key) {
         return policyList.getOrDefault(key, defaultPolicyList);
     }
@@ -156,6 +187,14 @@ public class RateLimitProperties {
         this.keyPrefix = keyPrefix;
     }
 
+    public KeyHashing getKeyHashing() {
+        return keyHashing;
+    }
+
+    public void setKeyHashing(KeyHashing keyHashing) {
+        this.keyHashing = keyHashing;
+    }
+
     public RateLimitRepository getRepository() {
         return repository;
     }
@@ -188,6 +227,54 @@ public class RateLimitProperties {
         this.denyRequest = denyRequest;
     }
 
+    public InMemory getInMemory() {
+        return inMemory;
+    }
+
+    public void setInMemory(InMemory inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    public OffHeap getOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(OffHeap offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public Redis getRedis() {
+        return redis;
+    }
+
+    public void setRedis(Redis redis) {
+        this.redis = redis;
+    }
+
+    public Consul getConsul() {
+        return consul;
+    }
+
+    public void setConsul(Consul consul) {
+        this.consul = consul;
+    }
+
+    public Jpa getJpa() {
+        return jpa;
+    }
+
+    public void setJpa(Jpa jpa) {
+        this.jpa = jpa;
+    }
+
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(WriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
     public static class Policy {
         /**
          * Refresh interval window (in seconds).
@@ -340,4 +427,374 @@ public class RateLimitProperties {
             this.responseStatusCode = responseStatusCode;
         }
     }
+
+    public static class KeyHashing {
+
+        /**
+         * Stores rate keys as the key prefix followed by a 128-bit hash of the generated key, whichever key generator
+         * generated it.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of recently generated keys kept to resolve hashed keys while debugging, 0 disables the lookup.
+         */
+        @Min(0)
+        private int reverseLookupSize;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getReverseLookupSize() {
+            return reverseLookupSize;
+        }
+
+        public void setReverseLookupSize(int reverseLookupSize) {
+            this.reverseLookupSize = reverseLookupSize;
+        }
+    }
+
+    public static class InMemory {
+
+        /**
+         * Interval between sweeps removing keys whose window has ended (in seconds).
+         */
+        @NotNull
+        @DurationUnit(ChronoUnit.SECONDS)
+        private Duration evictionInterval = Duration.ofSeconds(60);
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+    }
+
+    public static class OffHeap {
+
+        /**
+         * Number of rate keys held off-heap, rounded up to a power of two.
+         */
+        @Min(1)
+        @Max(1 << 26)
+        private int capacity = 1 << 20;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    public static class Redis {
+
+        @Valid
+        @NestedConfigurationProperty
+        private NearCache nearCache = new NearCache();
+
+        @Valid
+        @NestedConfigurationProperty
+        private Reactive reactive = new Reactive();
+
+        public NearCache getNearCache() {
+            return nearCache;
+        }
+
+        public void setNearCache(NearCache nearCache) {
+            this.nearCache = nearCache;
+        }
+
+        public Reactive getReactive() {
+            return reactive;
+        }
+
+        public void setReactive(Reactive reactive) {
+            this.reactive = reactive;
+        }
+
+        public static class NearCache {
+
+            /**
+             * Counts usage locally and settles it with Redis in the background.
+             */
+            private boolean enabled;
+
+            /**
+             * Share of a limit or quota a node may use before settling synchronously with Redis.
+             */
+            @DecimalMin("0.0")
+            @DecimalMax("1.0")
+            private double leaseShare = 0.1;
+
+            /**
+             * Interval between background settlements (in milliseconds).
+             */
+            @NotNull
+            @DurationUnit(ChronoUnit.MILLIS)
+            private Duration syncInterval = Duration.ofMillis(100);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public double getLeaseShare() {
+                return leaseShare;
+            }
+
+            public void setLeaseShare(double leaseShare) {
+                this.leaseShare = leaseShare;
+            }
+
+            public Duration getSyncInterval() {
+                return syncInterval;
+            }
+
+            public void setSyncInterval(Duration syncInterval) {
+                this.syncInterval = syncInterval;
+            }
+        }
+
+        public static class Reactive {
+
+            /**
+             * Consumes quotas over a reactive connection, requires a reactive connection factory and reactor.
+             */
+            private boolean enabled;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+        }
+    }
+
+    public static class Consul {
+
+        /**
+         * Number of times an update rejected by the Consul check-and-set is retried.
+         */
+        @Min(0)
+        private int casRetries = 5;
+
+        /**
+         * Initial backoff between retries, doubled on every retry (in milliseconds).
+         */
+        @NotNull
+        @DurationUnit(ChronoUnit.MILLIS)
+        private Duration casBackoff = Duration.ofMillis(10);
+
+        /**
+         * Format rates are stored in, JSON is readable by nodes of earlier versions and BINARY nodes read both.
+         */
+        @NotNull
+        private Codec codec = Codec.JSON;
+
+        @Valid
+        @NestedConfigurationProperty
+        private Aggregation aggregation = new Aggregation();
+
+        public int getCasRetries() {
+            return casRetries;
+        }
+
+        public void setCasRetries(int casRetries) {
+            this.casRetries = casRetries;
+        }
+
+        public Duration getCasBackoff() {
+            return casBackoff;
+        }
+
+        public void setCasBackoff(Duration casBackoff) {
+            this.casBackoff = casBackoff;
+        }
+
+        public Codec getCodec() {
+            return codec;
+        }
+
+        public void setCodec(Codec codec) {
+            this.codec = codec;
+        }
+
+        public Aggregation getAggregation() {
+            return aggregation;
+        }
+
+        public void setAggregation(Aggregation aggregation) {
+            this.aggregation = aggregation;
+        }
+
+        public enum Codec {
+            BINARY, JSON
+        }
+
+        public static class Aggregation {
+
+            /**
+             * Counts usage locally and flushes it to Consul in the background.
+             */
+            private boolean enabled;
+
+            /**
+             * Interval between background flushes (in milliseconds).
+             */
+            @NotNull
+            @DurationUnit(ChronoUnit.MILLIS)
+            private Duration flushInterval = Duration.ofSeconds(1);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+        }
+    }
+
+    public static class Jpa {
+
+        /**
+         * Interval between removals of expired rates from the database (in seconds).
+         */
+        @NotNull
+        @DurationUnit(ChronoUnit.SECONDS)
+        private Duration cleanupInterval = Duration.ofSeconds(60);
+
+        @Valid
+        @NestedConfigurationProperty
+        private Batching batching = new Batching();
+
+        public Duration getCleanupInterval() {
+            return cleanupInterval;
+        }
+
+        public void setCleanupInterval(Duration cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+        }
+
+        public Batching getBatching() {
+            return batching;
+        }
+
+        public void setBatching(Batching batching) {
+            this.batching = batching;
+        }
+
+        public static class Batching {
+
+            /**
+             * Counts usage locally and writes it to the database in batches in the background.
+             */
+            private boolean enabled;
+
+            /**
+             * Share of a limit or quota a node may use before writing it to the database synchronously.
+             */
+            @DecimalMin("0.0")
+            @DecimalMax("1.0")
+            private double maxDrift = 0.1;
+
+            /**
+             * Interval between background flushes (in milliseconds).
+             */
+            @NotNull
+            @DurationUnit(ChronoUnit.MILLIS)
+            private Duration flushInterval = Duration.ofMillis(100);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public double getMaxDrift() {
+                return maxDrift;
+            }
+
+            public void setMaxDrift(double maxDrift) {
+                this.maxDrift = maxDrift;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+        }
+    }
+
+    public static class WriteBehind {
+
+        /**
+         * Queues the quota consumed by the post filter and sends it to the repository in the background.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of pending quota updates kept, further updates are dropped.
+         */
+        @Min(1)
+        private int capacity = 10000;
+
+        /**
+         * Interval between background flushes (in milliseconds).
+         */
+        @NotNull
+        @DurationUnit(ChronoUnit.MILLIS)
+        private Duration flushInterval = Duration.ofMillis(100);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public Duration getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+    }
 }
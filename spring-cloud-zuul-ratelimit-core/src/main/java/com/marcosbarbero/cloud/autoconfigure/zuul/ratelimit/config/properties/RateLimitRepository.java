@@ -57,4 +57,14 @@ public enum RateLimitRepository {
      * Uses Bucket4j Infinispan as data storage
      */
     BUCKET4J_INFINISPAN,
+
+    /**
+     * Uses the gateway's own memory as data storage
+     */
+    IN_MEMORY,
+
+    /**
+     * Uses the gateway's own off-heap memory as data storage
+     */
+    OFF_HEAP,
 }
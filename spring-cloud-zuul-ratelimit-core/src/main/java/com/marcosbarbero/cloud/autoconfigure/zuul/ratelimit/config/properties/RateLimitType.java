@@ -17,12 +17,13 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResolvedRequest;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.UrlPatterns;
 import java.util.Optional;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.net.util.SubnetUtils;
 import org.springframework.cloud.netflix.zuul.filters.Route;
-import org.springframework.util.AntPathMatcher;
 
 public enum RateLimitType {
     /**
@@ -31,16 +32,13 @@ public enum RateLimitType {
     ORIGIN {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            if (matcher.contains("/")) {
-                SubnetUtils subnetUtils = new SubnetUtils(matcher);
-                return subnetUtils.getInfo().isInRange(rateLimitUtils.getRemoteAddress(request));
-            }
-            return matcher.equals(rateLimitUtils.getRemoteAddress(request));
+            // the filters match origins with the tries compiled along with the route policies instead
+            return CidrTrie.compiled(matcher).contains(ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress());
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getRemoteAddress(request);
+            return ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress();
         }
     },
 
@@ -50,12 +48,12 @@ public enum RateLimitType {
     USER {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return matcher.equals(rateLimitUtils.getUser(request));
+            return matcher.equals(ResolvedRequest.of(request, rateLimitUtils).getUser());
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getUser(request);
+            return ResolvedRequest.of(request, rateLimitUtils).getUser();
         }
     },
 
@@ -80,7 +78,7 @@ public enum RateLimitType {
     ROLE {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getUserRoles().contains(matcher.toUpperCase());
+            return ResolvedRequest.of(request, rateLimitUtils).getUserRoles().contains(matcher.toUpperCase());
         }
 
         @Override
@@ -116,12 +114,13 @@ public enum RateLimitType {
     HTTP_METHOD {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return request.getMethod().equalsIgnoreCase(matcher);
+            return ResolvedRequest.of(request, rateLimitUtils).getMethod().equalsIgnoreCase(matcher);
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return StringUtils.isEmpty(matcher) ? request.getMethod() : "http-method";
+            return StringUtils.isEmpty(matcher)
+                ? ResolvedRequest.of(request, rateLimitUtils).getMethod() : "http-method";
         }
     },
 
@@ -131,7 +130,7 @@ public enum RateLimitType {
     URL_PATTERN {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return new AntPathMatcher().match(matcher.toLowerCase(), request.getRequestURI().toLowerCase());
+            return UrlPatterns.matches(matcher, ResolvedRequest.of(request, rateLimitUtils).getPath());
         }
 
         @Override
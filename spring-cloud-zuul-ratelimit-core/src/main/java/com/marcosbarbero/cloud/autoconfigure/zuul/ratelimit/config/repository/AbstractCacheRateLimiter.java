@@ -26,7 +26,10 @@ import java.time.Duration;
  *
  * @author Liel Chayoun
  * @since 2018-04-06
+ * @deprecated Serializes every call on the limiter instance, use {@link AbstractNonBlockCacheRateLimiter} for
+ * stores that apply updates atomically
  */
+@Deprecated
 public abstract class AbstractCacheRateLimiter implements RateLimiter {
 
     @Override
@@ -16,24 +16,41 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
+import com.google.common.util.concurrent.Striped;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import java.util.Date;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Abstract implementation for {@link RateLimiter}.
  *
+ * <p>The read-modify-write cycle of a rate is guarded by a lock striped by key, so only requests sharing the same
+ * key (or hashing to the same stripe) are serialized.</p>
+ *
  * @author Liel Chayoun
  * @author Marcos Barbero
  * @since 2017-08-28
  */
 public abstract class AbstractRateLimiter implements RateLimiter {
 
+    public static final int DEFAULT_LOCK_STRIPES = 1024;
+
     private final RateLimiterErrorHandler rateLimiterErrorHandler;
+    private final Striped<Lock> locks;
 
     protected AbstractRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler) {
+        this(rateLimiterErrorHandler, DEFAULT_LOCK_STRIPES);
+    }
+
+    protected AbstractRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler, int lockStripes) {
         this.rateLimiterErrorHandler = rateLimiterErrorHandler;
+        this.locks = Striped.lock(lockStripes);
+    }
+
+    protected RateLimiterErrorHandler getRateLimiterErrorHandler() {
+        return rateLimiterErrorHandler;
     }
 
     protected abstract Rate getRate(String key);
@@ -41,15 +58,21 @@ public abstract class AbstractRateLimiter implements RateLimiter {
     protected abstract void saveRate(Rate rate);
 
     @Override
-    public synchronized Rate consume(final Policy policy, final String key, final Long requestTime) {
-        Rate rate = this.create(policy, key);
-        updateRate(policy, rate, requestTime);
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        Lock lock = locks.get(key);
+        lock.lock();
         try {
-            saveRate(rate);
-        } catch (RuntimeException e) {
-            rateLimiterErrorHandler.handleSaveError(key, e);
+            Rate rate = this.create(policy, key);
+            updateRate(policy, rate, requestTime);
+            try {
+                saveRate(rate);
+            } catch (RuntimeException e) {
+                rateLimiterErrorHandler.handleSaveError(key, e);
+            }
+            return rate;
+        } finally {
+            lock.unlock();
         }
-        return rate;
     }
 
     private Rate create(final Policy policy, final String key) {
@@ -59,7 +82,13 @@ public abstract class AbstractRateLimiter implements RateLimiter {
         } catch (RuntimeException e) {
             rateLimiterErrorHandler.handleFetchError(key, e);
         }
+        return create(policy, key, rate);
+    }
 
+    /**
+     * Returns the stored rate, or a new one for the policy if there is none or it has expired.
+     */
+    protected Rate create(final Policy policy, final String key, final Rate rate) {
         if (!isExpired(rate)) {
             return rate;
         }
@@ -72,16 +101,26 @@ public abstract class AbstractRateLimiter implements RateLimiter {
         return new Rate(key, limit, quota, refreshInterval, expiration, policy.getCapacity());
     }
 
-    private void updateRate(final Policy policy, final Rate rate, final Long requestTime) {
+    /**
+     * Consumes the request from the limit, or its request time from the quota.
+     */
+    protected void updateRate(final Policy policy, final Rate rate, final Long requestTime) {
+        updateRate(policy, rate, requestTime == null ? 1L : 0L, requestTime != null ? requestTime : 0L);
+    }
+
+    /**
+     * Consumes the given number of requests from the limit and the given time from the quota.
+     */
+    protected void updateRate(final Policy policy, final Rate rate, final long limitUsage, final long quotaUsage) {
         if (rate.getReset() > 0) {
             Long reset = rate.getExpiration().getTime() - System.currentTimeMillis();
             rate.setReset(reset);
         }
-        if (policy.getLimit() != null && requestTime == null) {
-            rate.setRemaining(Math.max(-1, rate.getRemaining() - 1));
+        if (policy.getLimit() != null && limitUsage > 0) {
+            rate.setRemaining(Math.max(-1, rate.getRemaining() - limitUsage));
         }
-        if (policy.getQuota() != null && requestTime != null) {
-            rate.setRemainingQuota(Math.max(-1, rate.getRemainingQuota() - requestTime));
+        if (policy.getQuota() != null && quotaUsage > 0) {
+            rate.setRemainingQuota(Math.max(-1, rate.getRemainingQuota() - quotaUsage));
         }
     }
 
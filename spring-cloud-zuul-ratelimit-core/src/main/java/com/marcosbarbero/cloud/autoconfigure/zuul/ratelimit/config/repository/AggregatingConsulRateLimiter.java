@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * {@link ConsulRateLimiter} counting usage locally and flushing it to Consul every flush interval.
+ *
+ * <p>The first request for a key, and the first one after its window ended, reads and writes Consul. Following
+ * requests are counted against the last rate read from Consul, and every flush writes the usage counted since the
+ * previous one with a single check-and-set per key, refreshing the local view of keys used in between. Consul calls
+ * therefore depend on the number of keys and the flush interval, not on the number of requests. Between two flushes
+ * every node only sees its own usage, so a cluster may overshoot by what its other nodes counted in the
+ * meantime.</p>
+ */
+public class AggregatingConsulRateLimiter extends ConsulRateLimiter implements DisposableBean {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushExecutor;
+
+    public AggregatingConsulRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler, ConsulClient consulClient,
+        RateCodec rateCodec, int casRetries, Duration casBackoff, Duration flushInterval) {
+        super(rateLimiterErrorHandler, consulClient, rateCodec, casRetries, casBackoff);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-consul-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, MILLISECONDS);
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final long limitUsage = requestTime == null ? 1L : 0L;
+        final long quotaUsage = requestTime != null ? requestTime : 0L;
+
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.isExpired()) {
+                Entry created = new Entry(key, policy);
+                created.pendingLimit.set(limitUsage);
+                created.pendingQuota.set(quotaUsage);
+                flush(created);
+                if (entry == null ? entries.putIfAbsent(key, created) == null
+                    : entries.replace(key, entry, created)) {
+                    return created.view();
+                }
+                // another request created the entry meanwhile, the usage is already flushed
+                return entries.getOrDefault(key, created).view();
+            }
+
+            entry.policy = policy;
+            entry.pendingLimit.addAndGet(limitUsage);
+            entry.pendingQuota.addAndGet(quotaUsage);
+            if (entry.touch()) {
+                return entry.view();
+            }
+            // a flush forgot the entry meanwhile and would never write the usage, count it on the next entry
+            entry.pendingLimit.addAndGet(-limitUsage);
+            entry.pendingQuota.addAndGet(-quotaUsage);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flushExecutor.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Flushes the usage counted for every key and forgets keys not used since the previous run.
+     */
+    void flush() {
+        entries.forEach((key, entry) -> {
+            if (entry.untouch() || entry.hasPending()) {
+                flush(entry);
+            } else if (entry.forget()) {
+                entries.remove(key, entry);
+            }
+        });
+    }
+
+    private void flush(Entry entry) {
+        synchronized (entry) {
+            // the usage stays pending until the stored rate includes it, so the local view never overestimates
+            long limitUsage = entry.pendingLimit.get();
+            long quotaUsage = entry.pendingQuota.get();
+            Policy policy = entry.policy;
+            entry.stored = update(policy, entry.key, rate -> updateRate(policy, rate, limitUsage, quotaUsage));
+            entry.pendingLimit.addAndGet(-limitUsage);
+            entry.pendingQuota.addAndGet(-quotaUsage);
+        }
+    }
+
+    private static final class Entry {
+
+        private static final int UNTOUCHED = 0;
+        private static final int TOUCHED = 1;
+        private static final int FORGOTTEN = 2;
+
+        private final String key;
+        private final AtomicLong pendingLimit = new AtomicLong();
+        private final AtomicLong pendingQuota = new AtomicLong();
+        private final AtomicInteger state = new AtomicInteger(UNTOUCHED);
+        private volatile Policy policy;
+        private volatile Rate stored;
+
+        private Entry(String key, Policy policy) {
+            this.key = key;
+            this.policy = policy;
+        }
+
+        /**
+         * Marks the entry used since the previous flush, after counting the usage, unless a flush forgot it.
+         */
+        private boolean touch() {
+            while (true) {
+                int current = state.get();
+                if (current == FORGOTTEN) {
+                    return false;
+                }
+                if (current == TOUCHED || state.compareAndSet(UNTOUCHED, TOUCHED)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean untouch() {
+            return state.compareAndSet(TOUCHED, UNTOUCHED);
+        }
+
+        /**
+         * Forgets the entry unless it was used since the previous flush, following usage then goes to another entry.
+         */
+        private boolean forget() {
+            return state.compareAndSet(UNTOUCHED, FORGOTTEN);
+        }
+
+        private boolean hasPending() {
+            return pendingLimit.get() > 0 || pendingQuota.get() > 0;
+        }
+
+        private boolean isExpired() {
+            Rate rate = stored;
+            return rate == null || rate.getExpiration().getTime() < System.currentTimeMillis();
+        }
+
+        private Rate view() {
+            Rate rate = stored;
+            Long remaining = rate.getRemaining() != null
+                ? Math.max(-1L, rate.getRemaining() - pendingLimit.get()) : null;
+            Long remainingQuota = rate.getRemainingQuota() != null
+                ? Math.max(-1L, rate.getRemainingQuota() - pendingQuota.get()) : null;
+            long reset = Math.max(0L, rate.getExpiration().getTime() - System.currentTimeMillis());
+            return new Rate(key, remaining, remainingQuota, reset, rate.getExpiration(), rate.getCapacity());
+        }
+    }
+}
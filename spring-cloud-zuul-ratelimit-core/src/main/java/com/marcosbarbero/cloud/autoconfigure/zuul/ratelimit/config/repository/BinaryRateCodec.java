@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * {@link RateCodec} writing a rate as a fixed width binary value.
+ *
+ * <p>The value is a version byte, a byte flagging which fields are set, then the remaining limit, the remaining
+ * quota, the reset, the expiration in epoch millis and the capacity as big-endian longs, {@value #LENGTH} bytes in
+ * total. Unset fields are written as zero. The key is not stored. Values in another format are read with the
+ * fallback codec, if any.</p>
+ */
+public class BinaryRateCodec implements RateCodec {
+
+    static final int LENGTH = 2 + 5 * Long.BYTES;
+
+    private static final byte VERSION = 1;
+
+    private static final int REMAINING = 1;
+    private static final int REMAINING_QUOTA = 1 << 1;
+    private static final int RESET = 1 << 2;
+    private static final int EXPIRATION = 1 << 3;
+    private static final int CAPACITY = 1 << 4;
+
+    private final RateCodec fallback;
+
+    public BinaryRateCodec() {
+        this(null);
+    }
+
+    /**
+     * @param fallback codec reading values not written by this codec, such as the JSON rates of earlier versions
+     */
+    public BinaryRateCodec(final RateCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] encode(final Rate rate) {
+        Date expiration = rate.getExpiration();
+        int flags = flag(rate.getRemaining(), REMAINING) | flag(rate.getRemainingQuota(), REMAINING_QUOTA)
+            | flag(rate.getReset(), RESET) | flag(expiration, EXPIRATION) | flag(rate.getCapacity(), CAPACITY);
+        return ByteBuffer.allocate(LENGTH)
+            .put(VERSION)
+            .put((byte) flags)
+            .putLong(valueOf(rate.getRemaining()))
+            .putLong(valueOf(rate.getRemainingQuota()))
+            .putLong(valueOf(rate.getReset()))
+            .putLong(expiration != null ? expiration.getTime() : 0L)
+            .putLong(valueOf(rate.getCapacity()))
+            .array();
+    }
+
+    @Override
+    public Rate decode(final String key, final byte[] value) throws IOException {
+        if (value.length != LENGTH || value[0] != VERSION) {
+            if (fallback != null) {
+                return fallback.decode(key, value);
+            }
+            throw new IOException("Unsupported rate format of " + value.length + " bytes"
+                + (value.length > 0 ? ", version " + value[0] : ""));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(value, 2, LENGTH - 2);
+        int flags = value[1];
+        Long remaining = read(buffer, flags, REMAINING);
+        Long remainingQuota = read(buffer, flags, REMAINING_QUOTA);
+        Long reset = read(buffer, flags, RESET);
+        Long expiration = read(buffer, flags, EXPIRATION);
+        Long capacity = read(buffer, flags, CAPACITY);
+        return new Rate(key, remaining, remainingQuota, reset, expiration != null ? new Date(expiration) : null,
+            capacity);
+    }
+
+    private static int flag(Object field, int flag) {
+        return field != null ? flag : 0;
+    }
+
+    private static long valueOf(Long field) {
+        return field != null ? field : 0L;
+    }
+
+    private static Long read(ByteBuffer buffer, int flags, int flag) {
+        long value = buffer.getLong();
+        return (flags & flag) != 0 ? value : null;
+    }
+}
@@ -17,21 +17,31 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
 import com.ecwid.consul.v1.ConsulClient;
-import com.ecwid.consul.v1.kv.model.GetValue;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetBinaryValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Consul;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
-import static org.springframework.util.StringUtils.hasText;
 
 /**
  * Consul rate limiter configuration.
  *
+ * <p>Rates are written with a check-and-set on the {@code ModifyIndex} they were read at, so concurrent updates from
+ * any gateway node are detected by Consul and retried with a randomized exponential backoff instead of overwriting
+ * each other. Rates are stored in the format of the given {@link RateCodec}.</p>
+ *
  * @author Liel Chayoun
  * @author Marcos Barbero
  * @author Mohamed Fawzy
@@ -41,41 +51,128 @@ public class ConsulRateLimiter extends AbstractRateLimiter {
 
     private static Logger log = LoggerFactory.getLogger(ConsulRateLimiter.class);
 
+    private static final Consul DEFAULTS = new Consul();
+    private static final long MAX_BACKOFF_MILLIS = 1000L;
+
     private final ConsulClient consulClient;
-    private final ObjectMapper objectMapper;
+    private final RateCodec rateCodec;
+    private final int casRetries;
+    private final long casBackoff;
 
     public ConsulRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler,
         ConsulClient consulClient, ObjectMapper objectMapper) {
+        this(rateLimiterErrorHandler, consulClient, new JacksonRateCodec(objectMapper), DEFAULTS.getCasRetries(),
+            DEFAULTS.getCasBackoff());
+    }
+
+    public ConsulRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler, ConsulClient consulClient,
+        RateCodec rateCodec, int casRetries, Duration casBackoff) {
         super(rateLimiterErrorHandler);
         this.consulClient = consulClient;
-        this.objectMapper = objectMapper;
+        this.rateCodec = rateCodec;
+        this.casRetries = casRetries;
+        this.casBackoff = Math.max(1L, casBackoff.toMillis());
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        return update(policy, key, rate -> updateRate(policy, rate, requestTime));
+    }
+
+    /**
+     * Applies an update to the stored rate of a key, retrying as long as Consul rejects the write because the rate
+     * was modified since it was read.
+     */
+    Rate update(final Policy policy, final String key, final Consumer<Rate> update) {
+        final String consulKey = buildValidConsulKey(key);
+        for (int attempt = 0; ; attempt++) {
+            GetBinaryValue value;
+            try {
+                value = this.consulClient.getKVBinaryValue(consulKey).getValue();
+            } catch (RuntimeException e) {
+                // without a ModifyIndex there is nothing to check-and-set against, return an unsaved rate
+                getRateLimiterErrorHandler().handleFetchError(key, e);
+                Rate rate = create(policy, key, null);
+                update.accept(rate);
+                return rate;
+            }
+
+            Rate rate = create(policy, key, decode(key, value));
+            update.accept(rate);
+            byte[] encoded = encode(rate);
+            if (encoded == null) {
+                return rate;
+            }
+
+            try {
+                // an index of 0 only writes the key if it does not exist yet
+                PutParams putParams = new PutParams();
+                putParams.setCas(value != null ? value.getModifyIndex() : 0L);
+                Response<Boolean> response = this.consulClient.setKVBinaryValue(consulKey, encoded, putParams);
+                if (response != null && Boolean.TRUE.equals(response.getValue())) {
+                    return rate;
+                }
+            } catch (RuntimeException e) {
+                getRateLimiterErrorHandler().handleSaveError(key, e);
+                return rate;
+            }
+
+            if (attempt >= casRetries || !backoff(attempt)) {
+                getRateLimiterErrorHandler().handleSaveError(key,
+                    new ConcurrentModificationException("Rate modified concurrently " + (attempt + 1) + " times"));
+                return rate;
+            }
+        }
     }
 
     @Override
     protected Rate getRate(final String key) {
+        return decode(key, this.consulClient.getKVBinaryValue(buildValidConsulKey(key)).getValue());
+    }
+
+    @Override
+    protected void saveRate(Rate rate) {
+        byte[] value = encode(rate);
+        if (value != null) {
+            this.consulClient.setKVBinaryValue(buildValidConsulKey(rate.getKey()), value);
+        }
+    }
+
+    private Rate decode(String key, GetBinaryValue value) {
         Rate rate = null;
-        GetValue value = this.consulClient.getKVValue(buildValidConsulKey(key)).getValue();
-        if (value != null && value.getDecodedValue() != null) {
+        if (value != null && value.getValue() != null) {
             try {
-                rate = this.objectMapper.readValue(value.getDecodedValue(), Rate.class);
-            } catch (IOException e) {
-                log.error("Failed to deserialize Rate", e);
+                rate = this.rateCodec.decode(key, value.getValue());
+            } catch (IOException | RuntimeException e) {
+                getRateLimiterErrorHandler().handleFetchError(key, e);
             }
         }
         return rate;
     }
 
-    @Override
-    protected void saveRate(Rate rate) {
-        String value = "";
+    private byte[] encode(Rate rate) {
+        byte[] value = null;
         try {
-            value = this.objectMapper.writeValueAsString(rate);
-        } catch (JsonProcessingException e) {
+            value = this.rateCodec.encode(rate);
+        } catch (IOException e) {
             log.error("Failed to serialize Rate", e);
         }
+        return value;
+    }
 
-        if (hasText(value)) {
-            this.consulClient.setKVValue(buildValidConsulKey(rate.getKey()), value);
+    /**
+     * Sleeps a random time up to the backoff doubled on every attempt.
+     *
+     * @return false if the thread was interrupted
+     */
+    private boolean backoff(int attempt) {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, casBackoff << Math.min(attempt, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
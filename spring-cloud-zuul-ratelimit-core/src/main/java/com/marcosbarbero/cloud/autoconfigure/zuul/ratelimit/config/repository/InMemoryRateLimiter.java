@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.PackedRateState.isExpired;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.PackedRateState.usage;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Local, in-process rate limiter.
+ *
+ * <p>Every key holds a single {@code long} packing the end of its current window and the usage within it (see
+ * {@link PackedRateState}), updated with CAS. Windows have a one second resolution. Keys whose window has ended are
+ * evicted in the background.</p>
+ */
+public class InMemoryRateLimiter extends AbstractNonBlockCacheRateLimiter implements DisposableBean {
+
+    private static final long RETIRED = -1L;
+
+    private final ConcurrentMap<String, AtomicLong> slots = new ConcurrentHashMap<>();
+    private final long epoch = System.currentTimeMillis();
+    private final ScheduledExecutorService evictionExecutor;
+
+    public InMemoryRateLimiter(final Duration evictionInterval) {
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = evictionInterval.toMillis();
+        this.evictionExecutor.scheduleWithFixedDelay(this::evictExpired, interval, interval, MILLISECONDS);
+    }
+
+    @Override
+    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval, final Long requestTime,
+                                      final String key, final Rate rate) {
+        if (limit == null) {
+            return;
+        }
+        long state = consume(key, requestTime == null ? 1L : 0L, refreshInterval);
+        rate.setRemaining(Math.max(-1L, limit - usage(state)));
+        rate.setReset(reset(state));
+    }
+
+    @Override
+    protected void calcRemainingQuota(final Long quota, final Duration refreshInterval, final Long requestTime,
+                                      final String key, final Rate rate) {
+        if (quota == null) {
+            return;
+        }
+        long state = consume(key + QUOTA_SUFFIX, requestTime != null ? requestTime : 0L, refreshInterval);
+        rate.setRemainingQuota(Math.max(-1L, quota - usage(state)));
+        rate.setReset(reset(state));
+    }
+
+    @Override
+    public void destroy() {
+        evictionExecutor.shutdownNow();
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    void evictExpired() {
+        final long now = now();
+        slots.forEach((key, slot) -> {
+            long current = slot.get();
+            if (current != RETIRED && isExpired(current, now) && slot.compareAndSet(current, RETIRED)) {
+                slots.remove(key, slot);
+            }
+        });
+    }
+
+    private long consume(String key, long usage, Duration refreshInterval) {
+        final long now = now();
+        while (true) {
+            AtomicLong slot = slots.get(key);
+            if (slot == null) {
+                slot = slots.computeIfAbsent(key, k -> new AtomicLong());
+            }
+            long current = slot.get();
+            if (current == RETIRED) {
+                slots.remove(key, slot);
+                continue;
+            }
+            long next = PackedRateState.next(current, now, usage, refreshInterval);
+            if (next == current || slot.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis() - epoch;
+    }
+
+    private long reset(long state) {
+        return PackedRateState.reset(state, now());
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.io.IOException;
+
+/**
+ * {@link RateCodec} writing a rate as JSON, the format stored by earlier versions.
+ */
+public class JacksonRateCodec implements RateCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonRateCodec(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(final Rate rate) throws IOException {
+        return objectMapper.writeValueAsBytes(rate);
+    }
+
+    @Override
+    public Rate decode(final String key, final byte[] value) throws IOException {
+        return objectMapper.readValue(value, Rate.class);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+/**
+ * {@link RedisRateLimiter} answering from a node local view of every key.
+ *
+ * <p>The first request for a key goes to Redis. Following requests are counted locally against the last value
+ * returned by Redis and the local usage is settled in the background every sync interval. A request settles
+ * synchronously once the unsettled usage of a key exceeds its lease, the given share of the limit or quota, which
+ * bounds how far a node can overshoot between two settlements. Only requests admitted by the local view count as
+ * usage. A settlement consumes as much of the limit usage as Redis still holds, the shortfall leaving the local view
+ * exhausted until the next settlement. Settlements call Redis per counter, the near cache does not combine limit,
+ * quota or the policies of a request into fewer calls.</p>
+ */
+public class NearCacheRedisRateLimiter extends RedisRateLimiter implements DisposableBean {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final RedisScript<List> redisSettleScript;
+    private final double leaseShare;
+    private final ScheduledExecutorService settleExecutor;
+
+    public NearCacheRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                     final StringRedisTemplate redisTemplate, final double leaseShare,
+                                     final Duration syncInterval) {
+        super(rateLimiterErrorHandler, redisTemplate, false);
+        DefaultRedisScript<List> settleScript = new DefaultRedisScript<>();
+        settleScript.setLocation(new ClassPathResource("/scripts/burst_settle.lua"));
+        settleScript.setResultType(List.class);
+        this.redisSettleScript = settleScript;
+        this.leaseShare = leaseShare;
+        this.settleExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-redis-settle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = syncInterval.toMillis();
+        this.settleExecutor.scheduleWithFixedDelay(this::settle, interval, interval, MILLISECONDS);
+    }
+
+    @Override
+    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval,
+                                      final Long requestTime, final String key, final Rate rate) {
+        if (Objects.nonNull(limit)) {
+            Entry entry;
+            Long remaining;
+            do {
+                entry = entry(key, false, limit, refreshInterval, rate.getCapacity());
+                remaining = consume(entry, requestTime == null ? 1L : 0L);
+            } while (remaining == null);
+            rate.setRemaining(remaining);
+            rate.setReset(entry.settledReset);
+        }
+    }
+
+    @Override
+    protected void calcRemainingQuota(final Long quota, final Duration refreshInterval,
+                                      final Long requestTime, final String key, final Rate rate) {
+        if (Objects.nonNull(quota)) {
+            Entry entry;
+            Long remaining;
+            do {
+                entry = entry(key, true, quota, refreshInterval, null);
+                remaining = consume(entry, requestTime != null ? requestTime : 0L);
+            } while (remaining == null);
+            rate.setRemainingQuota(remaining);
+            rate.setReset(entry.settledReset);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        settleExecutor.shutdownNow();
+        settle();
+    }
+
+    /**
+     * Settles the unsettled usage of every key with Redis and forgets keys not used since the previous run.
+     */
+    void settle() {
+        entries.forEach((key, entry) -> {
+            if (entry.untouch() || entry.pending.get() > 0) {
+                settle(entry);
+            } else if (entry.forget()) {
+                entries.remove(key, entry);
+            }
+        });
+    }
+
+    private Entry entry(String key, boolean quota, Long allowance, Duration refreshInterval, Long capacity) {
+        String entryKey = quota ? key + QUOTA_SUFFIX : key;
+        Entry entry = entries.get(entryKey);
+        if (entry == null) {
+            Entry created = new Entry(key, quota);
+            created.update(allowance, refreshInterval, capacity, leaseShare);
+            // reads the counter, the usage of the request is then counted locally like any other
+            settle(created);
+            entry = entries.putIfAbsent(entryKey, created);
+            if (entry == null) {
+                return created;
+            }
+        }
+        entry.update(allowance, refreshInterval, capacity, leaseShare);
+        return entry;
+    }
+
+    /**
+     * Counts the usage against the local view and returns the remaining limit or quota, or {@code null} when a
+     * settlement forgot the entry meanwhile and the usage has to be counted on the entry replacing it. Limit usage of a
+     * request the local view rejects is not counted, quota usage is reported after the request was served so it always
+     * is.
+     */
+    private Long consume(Entry entry, long usage) {
+        if (usage <= 0) {
+            return entry.touch() ? entry.remaining() : null;
+        }
+        long pending;
+        do {
+            pending = entry.pending.get();
+            if (!entry.quota && entry.settledRemaining - pending - usage < 0) {
+                return entry.touch() ? -1L : null;
+            }
+        } while (!entry.pending.compareAndSet(pending, pending + usage));
+        if (!entry.touch()) {
+            entry.pending.addAndGet(-usage);
+            return null;
+        }
+        if (pending + usage > entry.lease) {
+            settle(entry);
+        }
+        return entry.remaining();
+    }
+
+    private void settle(Entry entry) {
+        synchronized (entry) {
+            // the usage stays pending until the settled value includes it, so the local view never overestimates
+            long usage = entry.pending.get();
+            Rate rate = new Rate(entry.key, null, null, null, null, entry.capacity);
+            if (entry.quota) {
+                consumeQuota(entry.key, usage, entry.allowance, entry.refreshInterval, rate);
+                entry.settled(rate.getRemainingQuota(), rate.getReset());
+            } else {
+                List<Long> result = settleLimit(entry, usage);
+                if (result == null) {
+                    // keep the usage pending for the next settlement, and count locally from a full limit meanwhile
+                    if (!entry.initialized) {
+                        setRemaining(entry.allowance, entry.refreshInterval, null, rate);
+                        entry.settled(entry.allowance, rate.getReset());
+                    }
+                    return;
+                }
+                setRemaining(entry.allowance, entry.refreshInterval, result, rate);
+                entry.settled(rate.getRemaining() - result.get(3), rate.getReset());
+            }
+            entry.pending.addAndGet(-usage);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> settleLimit(Entry entry, long usage) {
+        try {
+            return executeReadingTime(redisSettleScript, Collections.singletonList(entry.key),
+                    Long.toString(usage),
+                    Long.toString(refillPerMsec(entry.allowance, entry.refreshInterval)),
+                    Long.toString(entry.capacity));
+        } catch (RuntimeException e) {
+            String msg = "Failed settling rate for " + entry.key + ", will retry on the next settlement";
+            rateLimiterErrorHandler.handleError(msg, e);
+            return null;
+        }
+    }
+
+    private static final class Entry {
+
+        private static final int UNTOUCHED = 0;
+        private static final int TOUCHED = 1;
+        private static final int FORGOTTEN = 2;
+
+        private final String key;
+        private final boolean quota;
+        private final AtomicLong pending = new AtomicLong();
+        private final AtomicInteger state = new AtomicInteger(UNTOUCHED);
+        private volatile Long allowance;
+        private volatile Duration refreshInterval;
+        private volatile Long capacity;
+        private volatile long lease;
+        private volatile long settledRemaining;
+        private volatile long settledReset;
+        private volatile boolean initialized;
+
+        private Entry(String key, boolean quota) {
+            this.key = key;
+            this.quota = quota;
+        }
+
+        /**
+         * Marks the entry used since the previous settlement, after counting the usage, unless a settlement forgot it.
+         */
+        private boolean touch() {
+            while (true) {
+                int current = state.get();
+                if (current == FORGOTTEN) {
+                    return false;
+                }
+                if (current == TOUCHED || state.compareAndSet(UNTOUCHED, TOUCHED)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean untouch() {
+            return state.compareAndSet(TOUCHED, UNTOUCHED);
+        }
+
+        /**
+         * Forgets the entry unless it was used since the previous settlement, following usage then goes to another
+         * entry.
+         */
+        private boolean forget() {
+            return state.compareAndSet(UNTOUCHED, FORGOTTEN);
+        }
+
+        private void update(Long allowance, Duration refreshInterval, Long capacity, double leaseShare) {
+            if (!allowance.equals(this.allowance)) {
+                this.allowance = allowance;
+                this.lease = (long) (allowance * leaseShare);
+            }
+            this.refreshInterval = refreshInterval;
+            this.capacity = capacity;
+        }
+
+        private void settled(long remaining, long reset) {
+            this.settledRemaining = remaining;
+            this.settledReset = reset;
+            this.initialized = true;
+        }
+
+        private long remaining() {
+            return Math.max(-1L, settledRemaining - pending.get());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.PackedRateState.isExpired;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.PackedRateState.usage;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+
+/**
+ * Local rate limiter keeping its state outside of the Java heap.
+ *
+ * <p>Rates live in a fixed size, open addressing table inside a direct {@link ByteBuffer}. Every slot holds a 64 bit
+ * hash of the rate key and its {@link PackedRateState}. A key hashes to a bucket of {@value #BUCKET_SIZE} slots; when
+ * the bucket has no free or expired slot, a clock hand evicts the first slot not referenced since its last pass.
+ * Heap usage is therefore independent of the number of keys, at the cost of distinct keys with colliding hashes
+ * sharing a rate and of evicted keys starting a new window.</p>
+ */
+public class OffHeapRateLimiter extends AbstractNonBlockCacheRateLimiter {
+
+    static final int BUCKET_SIZE = 8;
+    static final int MAX_CAPACITY = 1 << 26;
+
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_LOCKS = 4096;
+    private static final long EMPTY = 0L;
+    private static final long REFERENCED = 1L;
+
+    private final ByteBuffer table;
+    private final ByteBuffer hands;
+    private final Object[] locks;
+    private final int bucketMask;
+    private final int lockMask;
+    private final long epoch = System.currentTimeMillis();
+
+    /**
+     * @param capacity Number of rate keys the table can hold, rounded up to a power of two
+     */
+    public OffHeapRateLimiter(final int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        int buckets = Integer.highestOneBit(Math.max(1, (capacity + BUCKET_SIZE - 1) / BUCKET_SIZE) * 2 - 1);
+        this.table = ByteBuffer.allocateDirect(buckets * BUCKET_SIZE * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        this.hands = ByteBuffer.allocateDirect(buckets);
+        this.bucketMask = buckets - 1;
+        this.locks = new Object[Math.min(buckets, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.lockMask = locks.length - 1;
+    }
+
+    @Override
+    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval, final Long requestTime,
+                                      final String key, final Rate rate) {
+        if (limit == null) {
+            return;
+        }
+        long state = consume(hash(key, ""), requestTime == null ? 1L : 0L, refreshInterval);
+        rate.setRemaining(Math.max(-1L, limit - usage(state)));
+        rate.setReset(PackedRateState.reset(state, now()));
+    }
+
+    @Override
+    protected void calcRemainingQuota(final Long quota, final Duration refreshInterval, final Long requestTime,
+                                      final String key, final Rate rate) {
+        if (quota == null) {
+            return;
+        }
+        long state = consume(hash(key, QUOTA_SUFFIX), requestTime != null ? requestTime : 0L, refreshInterval);
+        rate.setRemainingQuota(Math.max(-1L, quota - usage(state)));
+        rate.setReset(PackedRateState.reset(state, now()));
+    }
+
+    int capacity() {
+        return table.capacity() / SLOT_BYTES;
+    }
+
+    private long consume(long hash, long usage, Duration refreshInterval) {
+        final long tag = hash & ~REFERENCED | 2L;
+        final int bucket = (int) (hash >>> 32) & bucketMask;
+        final int base = bucket * BUCKET_SIZE * SLOT_BYTES;
+        final long now = now();
+        synchronized (locks[bucket & lockMask]) {
+            int free = -1;
+            for (int offset = base; offset < base + BUCKET_SIZE * SLOT_BYTES; offset += SLOT_BYTES) {
+                long stored = table.getLong(offset);
+                if ((stored & ~REFERENCED) == tag) {
+                    return store(offset, tag, PackedRateState.next(table.getLong(offset + 8), now, usage, refreshInterval));
+                }
+                if (free < 0 && (stored == EMPTY || isExpired(table.getLong(offset + 8), now))) {
+                    free = offset;
+                }
+            }
+            if (free < 0) {
+                free = evict(bucket, base);
+            }
+            return store(free, tag, PackedRateState.next(0L, now, usage, refreshInterval));
+        }
+    }
+
+    private long store(int offset, long tag, long state) {
+        table.putLong(offset, tag | REFERENCED);
+        table.putLong(offset + 8, state);
+        return state;
+    }
+
+    private int evict(int bucket, int base) {
+        int hand = hands.get(bucket);
+        while (true) {
+            int offset = base + hand * SLOT_BYTES;
+            hand = (hand + 1) % BUCKET_SIZE;
+            long stored = table.getLong(offset);
+            if ((stored & REFERENCED) == 0) {
+                hands.put(bucket, (byte) hand);
+                return offset;
+            }
+            table.putLong(offset, stored & ~REFERENCED);
+        }
+    }
+
+    private long now() {
+        return System.currentTimeMillis() - epoch;
+    }
+
+    private static long hash(String key, String suffix) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            hash = (hash ^ suffix.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb93fe1a85ec3L;
+        return hash ^ (hash >>> 33);
+    }
+}
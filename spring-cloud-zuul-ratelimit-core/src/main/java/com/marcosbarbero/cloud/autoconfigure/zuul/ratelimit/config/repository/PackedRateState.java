@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import java.time.Duration;
+
+/**
+ * Fixed window rate state packed in a single {@code long}: the end of the window in seconds since a limiter
+ * specific epoch in the upper 32 bits and the usage within the window in the lower 32 bits.
+ */
+final class PackedRateState {
+
+    static final long MAX_USAGE = 0xFFFFFFFFL;
+
+    private PackedRateState() {
+    }
+
+    /**
+     * Applies a usage to a state, opening a new window when the current one has ended.
+     *
+     * @param current         The current state, {@code 0} when there is none
+     * @param now             Milliseconds since the limiter epoch
+     * @param usage           The usage to add, {@code 0} to only read the state
+     * @param refreshInterval The window length
+     * @return The new state
+     */
+    static long next(long current, long now, long usage, Duration refreshInterval) {
+        if (isExpired(current, now)) {
+            return pack((now + refreshInterval.toMillis() + 999) / 1000, Math.min(usage, MAX_USAGE));
+        }
+        if (usage == 0) {
+            return current;
+        }
+        return pack(windowEnd(current), Math.min(usage(current) + usage, MAX_USAGE));
+    }
+
+    static boolean isExpired(long state, long now) {
+        return windowEnd(state) * 1000 <= now;
+    }
+
+    static long reset(long state, long now) {
+        return Math.max(0L, windowEnd(state) * 1000 - now);
+    }
+
+    static long usage(long state) {
+        return state & MAX_USAGE;
+    }
+
+    private static long windowEnd(long state) {
+        return state >>> 32;
+    }
+
+    private static long pack(long windowEnd, long usage) {
+        return (windowEnd << 32) | usage;
+    }
+}
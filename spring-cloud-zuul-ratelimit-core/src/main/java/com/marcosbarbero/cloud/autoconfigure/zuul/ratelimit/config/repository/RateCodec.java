@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.io.IOException;
+
+/**
+ * Converts a {@link Rate} to and from the value stored by key-value backends.
+ */
+public interface RateCodec {
+
+    byte[] encode(Rate rate) throws IOException;
+
+    /**
+     * Reads a stored rate.
+     *
+     * @param key the key of the rate, which encoders are not required to store
+     * @param value the stored value
+     */
+    Rate decode(String key, byte[] value) throws IOException;
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter.isExceeded;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link RedisRateLimiter} consuming asynchronously through a reactive connection.
+ *
+ * <p>Blocking consumption behaves as in {@link RedisRateLimiter}. Asynchronous consumption sends the limit and quota
+ * scripts of every policy without waiting for each other's replies and completes once Redis answered all of them,
+ * without holding the calling thread. The limits of a request are consumed one policy after the other instead, so
+ * those following an exceeded one are left untouched.</p>
+ */
+public class ReactiveRedisRateLimiter extends RedisRateLimiter {
+
+    private static final Consumer<Rate> NO_UPDATE = rate -> { };
+
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    public ReactiveRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                    final StringRedisTemplate redisTemplate,
+                                    final ReactiveStringRedisTemplate reactiveRedisTemplate) {
+        super(rateLimiterErrorHandler, redisTemplate);
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+    }
+
+    @Override
+    public CompletableFuture<Rate> consumeAsync(final Policy policy, final String key, final Long requestTime) {
+        return consumeReactive(policy, key, requestTime).toFuture();
+    }
+
+    @Override
+    public CompletionStage<List<Rate>> consumeAllAsync(final List<Policy> policies, final List<String> keys,
+                                                       final Long requestTime) {
+        if (requestTime == null) {
+            // the policies following an exceeded limit must not be consumed, so each waits for the previous one
+            AtomicInteger index = new AtomicInteger();
+            return Flux.range(0, policies.size())
+                    .concatMap(i -> consumeReactive(policies.get(i), keys.get(i), null))
+                    .takeUntil(rate -> isExceeded(policies.get(index.getAndIncrement()), rate))
+                    .collectList().toFuture();
+        }
+        List<Mono<Rate>> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            rates.add(consumeReactive(policies.get(i), keys.get(i), requestTime));
+        }
+        return Flux.mergeSequential(rates).collectList().toFuture();
+    }
+
+    private Mono<Rate> consumeReactive(final Policy policy, final String key, final Long requestTime) {
+        final Duration refreshInterval = policy.getRefreshInterval();
+        final Long limit = policy.getLimit();
+        final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+        final Rate rate = new Rate(key, limit, quota, null, null, policy.getCapacity());
+
+        Mono<Consumer<Rate>> limitUpdate = Mono.just(NO_UPDATE);
+        if (limit != null) {
+            limitUpdate = executeBurst(key, limitUsage(requestTime), refillPerMsec(limit, refreshInterval),
+                    rate.getCapacity())
+                    .<Consumer<Rate>>map(result -> r -> setRemaining(limit, refreshInterval, result, r))
+                    .onErrorResume(RuntimeException.class, e -> {
+                        String msg = "Failed retrieving rate for " + key + ", will return the current value";
+                        rateLimiterErrorHandler.handleError(msg, e);
+                        return Mono.just(r -> setRemaining(limit, refreshInterval, null, r));
+                    });
+        }
+        Mono<Consumer<Rate>> quotaUpdate = Mono.just(NO_UPDATE);
+        if (quota != null) {
+            String quotaKey = key + QUOTA_SUFFIX;
+            quotaUpdate = execute(redisQuotaScript, quotaKey, quotaUsage(requestTime), refreshInterval.getSeconds())
+                    .<Consumer<Rate>>map(result -> r -> setRemainingQuota(quota, refreshInterval, result.get(0), r))
+                    .onErrorResume(RuntimeException.class, e -> {
+                        String msg = "Failed retrieving rate for " + quotaKey + ", will return the current value";
+                        rateLimiterErrorHandler.handleError(msg, e);
+                        return Mono.just(r -> setRemainingQuota(quota, refreshInterval, null, r));
+                    });
+        }
+        // applied in the same order as the blocking calls, the quota reset wins over the limit reset
+        return Mono.zip(limitUpdate, quotaUpdate).map(updates -> {
+            updates.getT1().accept(rate);
+            updates.getT2().accept(rate);
+            return rate;
+        });
+    }
+
+    /**
+     * Runs the burst script, passing it the Redis server time when Redis cannot replicate scripts reading the time.
+     */
+    private Mono<List<Long>> executeBurst(final String key, final Object... args) {
+        if (isServerTimePassed()) {
+            return reactiveRedisTemplate.execute(connection -> connection.serverCommands().time()).next()
+                    .flatMap(time -> {
+                        Object[] timedArgs = Arrays.copyOf(args, args.length + 1);
+                        timedArgs[args.length] = time / 1000;
+                        return execute(redisBurstScript, key, timedArgs);
+                    });
+        }
+        return execute(redisBurstScript, key, args).onErrorResume(RuntimeException.class,
+                e -> isServerTimeRequired(e) ? executeBurst(key, args) : Mono.error(e));
+    }
+
+    /**
+     * Runs a script and collects its integer replies, which are emitted either one by one or as a single list
+     * depending on the reply type.
+     */
+    private Mono<List<Long>> execute(final RedisScript<?> script, final String key, final Object... args) {
+        List<String> scriptArgs = Arrays.stream(args).map(String::valueOf).collect(Collectors.toList());
+        return reactiveRedisTemplate.execute(script, Collections.singletonList(key), scriptArgs)
+                .flatMapIterable(reply -> reply instanceof List ? (List<?>) reply : Collections.singletonList(reply))
+                .cast(Long.class)
+                .collectList();
+    }
+}
@@ -16,90 +16,434 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter.isExceeded;
+
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
 
 /**
+ * Policies defining both a limit and a quota are evaluated with a single script call, unless the keys turn out to
+ * live in different cluster slots, in which case both counters are evaluated with their own script for a minute before
+ * combining them is tried again. All policies of a request are evaluated with a single pipeline, unless the connection
+ * does not support pipelining. When the limit of a policy is exceeded, the limits the pipeline consumed for the
+ * following policies are given back. Pipelined scripts are referenced by their SHA1 digest and only sent in full when
+ * Redis does not know them yet, in a second pipeline holding only the commands that failed. The scripts read the Redis
+ * server time themselves, except on Redis versions before 3.2, which cannot replicate such scripts and are given the
+ * time read with a separate call instead.
+ *
  * @author Marcos Barbero
  * @author Liel Chayoun
  */
 public class RedisRateLimiter extends AbstractNonBlockCacheRateLimiter {
 
-    private final RateLimiterErrorHandler rateLimiterErrorHandler;
+    private static final long CROSS_SLOT_RETRY_MILLIS = 60_000L;
+    private static final String NO_TIME = "NOTIME ";
+
+    final RateLimiterErrorHandler rateLimiterErrorHandler;
     private final StringRedisTemplate redisTemplate;
-    private final RedisScript<Long> redisQuotaScript;
-    private final RedisScript<List> redisBurstScript;
+    final RedisScript<Long> redisQuotaScript;
+    final RedisScript<List> redisBurstScript;
+    private final RedisScript<List> redisBurstQuotaScript;
+    private final RedisScript<Long> redisBurstRefundScript;
+    private final boolean combineLimitAndQuota;
+    private volatile long separateLimitAndQuotaUntil;
+    private volatile boolean pipelineBatches;
+    private volatile boolean passServerTime;
 
     public RedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
                             final StringRedisTemplate redisTemplate) {
+        this(rateLimiterErrorHandler, redisTemplate, true);
+    }
+
+    protected RedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                               final StringRedisTemplate redisTemplate, final boolean combineCalls) {
         this.rateLimiterErrorHandler = rateLimiterErrorHandler;
         this.redisTemplate = redisTemplate;
+        this.combineLimitAndQuota = combineCalls;
+        this.pipelineBatches = combineCalls;
         this.redisQuotaScript = getScript("quota.lua", Long.class);
         this.redisBurstScript = getScript("burst.lua", List.class);
+        this.redisBurstQuotaScript = getScript("burst_quota.lua", List.class);
+        this.redisBurstRefundScript = getScript("burst_refund.lua", Long.class);
     }
 
     @Override
-    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval,
-                                      final Long requestTime, final String key, final Rate rate) {
-        if (Objects.nonNull(limit)) {
-            long usage = requestTime == null ? 1L : 0L;
-            List<Long> result = Arrays.asList(0L, 0L);
-            Long timeToNextRefill = refreshInterval.getSeconds() / limit;
-            Long refillPerMsec = limit * 1000 / refreshInterval.getSeconds();
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final Long limit = policy.getLimit();
+        if (!combineLimitAndQuota || limit == null || policy.getQuota() == null
+                || System.currentTimeMillis() < separateLimitAndQuotaUntil) {
+            return super.consume(policy, key, requestTime);
+        }
+        final Duration refreshInterval = policy.getRefreshInterval();
+        final Long quota = policy.getQuota().toMillis();
+        final Rate rate = new Rate(key, limit, quota, null, null, policy.getCapacity());
+
+        try {
+            List<Long> result = executeReadingTime(redisBurstQuotaScript,
+                    Arrays.asList(key, key + QUOTA_SUFFIX),
+                    Long.toString(limitUsage(requestTime)),
+                    Long.toString(refillPerMsec(limit, refreshInterval)),
+                    Long.toString(rate.getCapacity()),
+                    Long.toString(quotaUsage(requestTime)),
+                    Long.toString(refreshInterval.getSeconds())
+                    );
+            setRemaining(limit, refreshInterval, result, rate);
+            setRemainingQuota(quota, refreshInterval, result.get(3), rate);
+        } catch (RuntimeException e) {
+            if (isCrossSlot(e)) {
+                separateLimitAndQuotaUntil = System.currentTimeMillis() + CROSS_SLOT_RETRY_MILLIS;
+                return super.consume(policy, key, requestTime);
+            }
+            String msg = "Failed retrieving rate for " + key + ", will return the current value";
+            rateLimiterErrorHandler.handleError(msg, e);
+            setRemaining(limit, refreshInterval, null, rate);
+            setRemainingQuota(quota, refreshInterval, null, rate);
+        }
+        return rate;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Rate> consumeAll(final List<Policy> policies, final List<String> keys, final Long requestTime) {
+        if (!pipelineBatches || policies.size() < 2) {
+            return super.consumeAll(policies, keys, requestTime);
+        }
+        final List<Rate> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            Policy policy = policies.get(i);
+            Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+            rates.add(new Rate(keys.get(i), policy.getLimit(), quota, null, null, policy.getCapacity()));
+        }
+
+        List<Object> results = null;
+        try {
+            results = pipeline(limitAndQuotaCalls(policies, keys, requestTime, rates));
+        } catch (RuntimeException e) {
+            if (isPipelineUnsupported(e)) {
+                pipelineBatches = false;
+                return super.consumeAll(policies, keys, requestTime);
+            }
+            String msg = "Failed retrieving rates for " + keys + ", will return the current values";
+            rateLimiterErrorHandler.handleError(msg, e);
+        }
+
+        int result = 0;
+        for (int i = 0; i < policies.size(); i++) {
+            Policy policy = policies.get(i);
+            Rate rate = rates.get(i);
+            if (policy.getLimit() != null) {
+                List<Long> limitResult = results != null ? (List<Long>) results.get(result++) : null;
+                setRemaining(policy.getLimit(), policy.getRefreshInterval(), limitResult, rate);
+            }
+            if (policy.getQuota() != null) {
+                Long quotaResult = results != null ? (Long) results.get(result++) : null;
+                setRemainingQuota(policy.getQuota().toMillis(), policy.getRefreshInterval(), quotaResult, rate);
+            }
+        }
+        if (requestTime == null) {
+            for (int i = 0; i < policies.size() - 1; i++) {
+                if (isExceeded(policies.get(i), rates.get(i))) {
+                    refundLimits(policies.subList(i + 1, policies.size()), rates.subList(i + 1, rates.size()));
+                    return new ArrayList<>(rates.subList(0, i + 1));
+                }
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Gives back the limit usage of policies following an exceeded one, which the pipeline consumed along with it.
+     * Policies rejected themselves did not consume anything, and the quota is only read when consuming limits.
+     */
+    private void refundLimits(final List<Policy> policies, final List<Rate> rates) {
+        List<ScriptCall> calls = new ArrayList<>();
+        for (int i = 0; i < policies.size(); i++) {
+            Rate rate = rates.get(i);
+            if (policies.get(i).getLimit() != null && rate.getRemaining() >= 0) {
+                calls.add(new ScriptCall(redisBurstRefundScript, ReturnType.INTEGER, false,
+                        bytes(rate.getKey()),
+                        bytes(limitUsage(null)),
+                        bytes(rate.getCapacity())));
+            }
+        }
+        if (calls.isEmpty()) {
+            return;
+        }
+        try {
+            pipeline(calls);
+        } catch (RuntimeException e) {
+            String msg = "Failed giving back rates following an exceeded one, will keep them consumed";
+            rateLimiterErrorHandler.handleError(msg, e);
+        }
+    }
+
+    /**
+     * Sends the scripts in a single pipeline and returns their replies. Redis runs every command of a pipeline
+     * whatever the outcome of the others, so when some scripts are unknown to Redis or cannot read the time, only
+     * those are sent again, the others having already consumed their counters.
+     */
+    private List<Object> pipeline(final List<ScriptCall> calls) {
+        Object[] results = new Object[calls.size()];
+        List<Integer> pending = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            pending.add(i);
+        }
+        boolean bySha = true;
+        boolean timeRequired = false;
+        while (true) {
+            List<Object> replies;
             try {
-                Long currentRedisTime = getRedisTime();
-                result = redisTemplate.execute(redisBurstScript,
-                        Collections.singletonList(key),
-                        Long.toString(usage),
-                        Long.toString(refillPerMsec),
-                        Long.toString(rate.getCapacity()),
-                        Long.toString(currentRedisTime)
-                        );
-//                assert result != null;
-                timeToNextRefill = timeToNextRefill - (currentRedisTime > result.get(1) ? (currentRedisTime - result.get(1)) : 0L);
+                replies = sendPipeline(calls, pending, bySha);
+            } catch (RedisPipelineException e) {
+                replies = e.getPipelineResult();
+                if (replies.size() != pending.size() || !isRetryable(replies, bySha, timeRequired)) {
+                    throw e;
+                }
+            }
+            List<Integer> failed = new ArrayList<>();
+            for (int i = 0; i < replies.size(); i++) {
+                Object reply = replies.get(i);
+                if (reply instanceof Throwable) {
+                    failed.add(pending.get(i));
+                    // sending the scripts in full caches them, so the next pipeline can refer to them again
+                    bySha &= !isNoScript((Throwable) reply);
+                    timeRequired |= isServerTimeRequired((Throwable) reply);
+                } else {
+                    results[pending.get(i)] = reply;
+                }
+            }
+            if (failed.isEmpty()) {
+                return Arrays.asList(results);
+            }
+            pending = failed;
+        }
+    }
 
-            } catch (RuntimeException e) {
-                String msg = "Failed retrieving rate for " + key + ", will return the current value";
-                rateLimiterErrorHandler.handleError(msg, e);
+    /**
+     * Whether every failed command of a pipeline failed because its script is unknown to Redis or cannot read the
+     * time, and was not already sent again for the same reason.
+     */
+    private static boolean isRetryable(final List<Object> replies, final boolean bySha, final boolean timeRequired) {
+        for (Object reply : replies) {
+            if (reply instanceof Throwable && !(bySha && isNoScript((Throwable) reply))
+                    && !(!timeRequired && hasErrorPrefix((Throwable) reply, NO_TIME))) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    private List<Object> sendPipeline(final List<ScriptCall> calls, final List<Integer> pending,
+                                      final boolean bySha) {
+        // the time cannot be read within the pipeline, whose replies only come once it is closed
+        final byte[] time = passServerTime ? bytes(serverSeconds()) : null;
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int index : pending) {
+                calls.get(index).eval(connection, bySha, time);
             }
-//            Long remaining = calcRemaining(limit, refreshInterval, usage, key, rate);
-            rate.setRemaining(result.get(0));
-            rate.setReset(timeToNextRefill);
+            return null;
+        });
+    }
+
+    private List<ScriptCall> limitAndQuotaCalls(final List<Policy> policies, final List<String> keys,
+                                                final Long requestTime, final List<Rate> rates) {
+        List<ScriptCall> calls = new ArrayList<>();
+        for (int i = 0; i < policies.size(); i++) {
+            addLimitAndQuota(calls, policies.get(i), keys.get(i), requestTime, rates.get(i));
         }
+        return calls;
     }
-    private Long getRedisTime() {
-        return redisTemplate.execute((RedisCallback<Long>) conn -> conn.time()/1000 );
+
+    private void addLimitAndQuota(final List<ScriptCall> calls, final Policy policy, final String key,
+                                  final Long requestTime, final Rate rate) {
+        final Duration refreshInterval = policy.getRefreshInterval();
+        if (policy.getLimit() != null) {
+            calls.add(new ScriptCall(redisBurstScript, ReturnType.MULTI, true,
+                    bytes(key),
+                    bytes(limitUsage(requestTime)),
+                    bytes(refillPerMsec(policy.getLimit(), refreshInterval)),
+                    bytes(rate.getCapacity())));
+        }
+        if (policy.getQuota() != null) {
+            calls.add(new ScriptCall(redisQuotaScript, ReturnType.INTEGER, false,
+                    bytes(key + QUOTA_SUFFIX),
+                    bytes(quotaUsage(requestTime)),
+                    bytes(refreshInterval.getSeconds())));
+        }
+    }
+
+    @Override
+    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval,
+                                      final Long requestTime, final String key, final Rate rate) {
+        if (Objects.nonNull(limit)) {
+            consumeLimit(key, limitUsage(requestTime), limit, refreshInterval, rate);
+        }
+    }
+
+    void consumeLimit(final String key, final long usage, final Long limit, final Duration refreshInterval,
+                      final Rate rate) {
+        try {
+            List<Long> result = executeReadingTime(redisBurstScript,
+                    Collections.singletonList(key),
+                    Long.toString(usage),
+                    Long.toString(refillPerMsec(limit, refreshInterval)),
+                    Long.toString(rate.getCapacity())
+                    );
+            setRemaining(limit, refreshInterval, result, rate);
+        } catch (RuntimeException e) {
+            String msg = "Failed retrieving rate for " + key + ", will return the current value";
+            rateLimiterErrorHandler.handleError(msg, e);
+            setRemaining(limit, refreshInterval, null, rate);
+        }
     }
 
     @Override
     protected void calcRemainingQuota(final Long quota, final Duration refreshInterval,
                                       final Long requestTime, final String key, final Rate rate) {
         if (Objects.nonNull(quota)) {
-            String quotaKey = key + QUOTA_SUFFIX;
-            long usage = requestTime != null ? requestTime : 0L;
-            rate.setReset(refreshInterval.toMillis());
-            Long current = 0L;
+            consumeQuota(key, quotaUsage(requestTime), quota, refreshInterval, rate);
+        }
+    }
+
+    void consumeQuota(final String key, final long usage, final Long quota, final Duration refreshInterval,
+                      final Rate rate) {
+        String quotaKey = key + QUOTA_SUFFIX;
+        Long current = 0L;
+        try {
+            current = redisTemplate.execute(redisQuotaScript, Collections.singletonList(quotaKey), Long.toString(usage),
+                    Long.toString(refreshInterval.getSeconds()));
+        } catch (RuntimeException e) {
+            String msg = "Failed retrieving rate for " + quotaKey + ", will return the current value";
+            rateLimiterErrorHandler.handleError(msg, e);
+        }
+        setRemainingQuota(quota, refreshInterval, current, rate);
+    }
+
+    /**
+     * Runs a script reading the Redis server time, passing it the time as the last argument when Redis cannot replicate
+     * scripts reading the time themselves.
+     */
+    <T> T executeReadingTime(final RedisScript<T> script, final List<String> keys, final String... args) {
+        if (!passServerTime) {
             try {
-                current = redisTemplate.execute(redisQuotaScript, Collections.singletonList(quotaKey), Long.toString(usage),
-                        Long.toString(refreshInterval.getSeconds()));
+                return redisTemplate.execute(script, keys, (Object[]) args);
             } catch (RuntimeException e) {
-                String msg = "Failed retrieving rate for " + quotaKey + ", will return the current value";
-                rateLimiterErrorHandler.handleError(msg, e);
+                if (!isServerTimeRequired(e)) {
+                    throw e;
+                }
+            }
+        }
+        String[] timedArgs = Arrays.copyOf(args, args.length + 1);
+        timedArgs[args.length] = serverSeconds();
+        return redisTemplate.execute(script, keys, (Object[]) timedArgs);
+    }
+
+    /**
+     * Whether the scripts replied that they cannot read the time, in which case they are given the time from now on.
+     */
+    boolean isServerTimeRequired(final Throwable e) {
+        if (hasErrorPrefix(e, NO_TIME)) {
+            passServerTime = true;
+            return true;
+        }
+        return false;
+    }
+
+    boolean isServerTimePassed() {
+        return passServerTime;
+    }
+
+    String serverSeconds() {
+        return String.valueOf(redisTemplate.execute((RedisCallback<Long>) RedisServerCommands::time) / 1000);
+    }
+
+    /**
+     * @param result remaining, refill timestamp and current time as returned by the burst script, {@code null} when
+     *               the script failed
+     */
+    static void setRemaining(final Long limit, final Duration refreshInterval, final List<Long> result,
+                             final Rate rate) {
+        Long timeToNextRefill = refreshInterval.getSeconds() / limit;
+        if (result == null) {
+            rate.setRemaining(0L);
+            rate.setReset(timeToNextRefill);
+            return;
+        }
+        Long currentRedisTime = result.get(2);
+        timeToNextRefill = timeToNextRefill - (currentRedisTime > result.get(1) ? (currentRedisTime - result.get(1)) : 0L);
+        rate.setRemaining(result.get(0));
+        rate.setReset(timeToNextRefill);
+    }
+
+    static void setRemainingQuota(final Long quota, final Duration refreshInterval, final Long current,
+                                  final Rate rate) {
+        rate.setReset(refreshInterval.toMillis());
+        rate.setRemainingQuota(Math.max(-1, quota - (current != null ? current.intValue() : 0)));
+    }
+
+    static long limitUsage(final Long requestTime) {
+        return requestTime == null ? 1L : 0L;
+    }
+
+    static long quotaUsage(final Long requestTime) {
+        return requestTime != null ? requestTime : 0L;
+    }
+
+    static long refillPerMsec(final Long limit, final Duration refreshInterval) {
+        return limit * 1000 / refreshInterval.getSeconds();
+    }
+
+    private static boolean isCrossSlot(Throwable e) {
+        return hasErrorPrefix(e, "CROSSSLOT ");
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        return hasErrorPrefix(e, "NOSCRIPT ");
+    }
+
+    /**
+     * Whether one of the causes is a Redis error reply of the given kind, Redis error replies starting with the kind.
+     */
+    private static boolean hasErrorPrefix(Throwable e, String prefix) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.startsWith(prefix)) {
+                return true;
             }
-            Long remaining = Math.max(-1, quota- (current != null ? current.intValue() : 0));
-//            Long remaining = calcRemaining(quota, refreshInterval, usage, quotaKey, rate);
-            rate.setRemainingQuota(remaining);
         }
+        return false;
     }
 
+    private static boolean isPipelineUnsupported(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnsupportedOperationException || cause instanceof InvalidDataAccessApiUsageException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] scriptBytes(final RedisScript<?> script) {
+        return script.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(final Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
 
     private <T> RedisScript<T> getScript(String scriptName, Class<T> tClass) {
 
@@ -108,4 +452,35 @@ public class RedisRateLimiter extends AbstractNonBlockCacheRateLimiter {
         redisScript.setResultType(tClass);
         return redisScript;
     }
+
+    /**
+     * Single key script call of a pipeline.
+     */
+    private static final class ScriptCall {
+
+        private final RedisScript<?> script;
+        private final ReturnType returnType;
+        private final boolean readsTime;
+        private final byte[][] keyAndArgs;
+
+        private ScriptCall(RedisScript<?> script, ReturnType returnType, boolean readsTime, byte[]... keyAndArgs) {
+            this.script = script;
+            this.returnType = returnType;
+            this.readsTime = readsTime;
+            this.keyAndArgs = keyAndArgs;
+        }
+
+        private void eval(RedisConnection connection, boolean bySha, byte[] time) {
+            byte[][] args = keyAndArgs;
+            if (readsTime && time != null) {
+                args = Arrays.copyOf(keyAndArgs, keyAndArgs.length + 1);
+                args[keyAndArgs.length] = time;
+            }
+            if (bySha) {
+                connection.evalSha(script.getSha1(), returnType, 1, args);
+            } else {
+                connection.eval(scriptBytes(script), returnType, 1, args);
+            }
+        }
+    }
 }
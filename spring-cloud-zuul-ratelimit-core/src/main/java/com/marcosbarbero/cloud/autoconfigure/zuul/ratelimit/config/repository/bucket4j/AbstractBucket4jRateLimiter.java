@@ -16,56 +16,78 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
 
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter.isExceeded;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.AbstractCacheRateLimiter;
-import io.github.bucket4j.AbstractBucketBuilder;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.AbstractNonBlockCacheRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Bucket4j;
 import io.github.bucket4j.BucketConfiguration;
 import io.github.bucket4j.ConsumptionProbe;
-import io.github.bucket4j.Extension;
-import io.github.bucket4j.grid.ProxyManager;
+import io.github.bucket4j.grid.CommandResult;
+import io.github.bucket4j.grid.GridProxy;
 import java.time.Duration;
-import java.util.function.Supplier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Bucket4j rate limiter configuration.
  *
+ * <p>Every bucket is updated with a single {@link ConsumeOrDrainCommand} applied atomically in the grid, so no local
+ * locking is needed and a rejected request costs one grid operation. When the grid supports asynchronous commands,
+ * asynchronous consumption does not block the calling thread and the quotas of all policies of a request are sent to
+ * the grid at once, as are the limit and quota buckets of a single policy. The limits of a request are consumed one
+ * policy after the other, so those following an exceeded one are left untouched.</p>
+ *
+ * <p>Bucket configurations are built once per capacity and period, and only sent to the grid along with the command
+ * when the bucket does not exist yet. No bucket proxy is built per key, commands go straight to the {@link GridProxy},
+ * so there is no proxy to cache and nothing kept per key on the node.</p>
+ *
  * @author Liel Chayoun
  * @since 2018-04-06
  */
-abstract class AbstractBucket4jRateLimiter<T extends AbstractBucketBuilder<T>, E extends Extension<T>> extends AbstractCacheRateLimiter {
-
-    private final Class<E> extension;
-    private ProxyManager<String> buckets;
+abstract class AbstractBucket4jRateLimiter extends AbstractNonBlockCacheRateLimiter {
 
-    AbstractBucket4jRateLimiter(final Class<E> extension) {
-        this.extension = extension;
-    }
+    private final ConcurrentMap<Limit, BucketConfiguration> configurations = new ConcurrentHashMap<>();
+    private GridProxy<String> gridProxy;
+    private boolean asyncModeSupported;
 
     void init() {
-        buckets = getProxyManager(getExtension());
-    }
-
-    private E getExtension() {
-        return Bucket4j.extension(extension);
+        gridProxy = getGridProxy();
+        asyncModeSupported = gridProxy.isAsyncModeSupported();
     }
 
-    protected abstract ProxyManager<String> getProxyManager(E extension);
+    protected abstract GridProxy<String> getGridProxy();
 
-    private Bucket getQuotaBucket(String key, Long quota, Duration refreshInterval) {
-        return buckets.getProxy(key + QUOTA_SUFFIX, getBucketConfiguration(quota, refreshInterval));
+    private BucketConfiguration getBucketConfiguration(long capacity, Duration period) {
+        return configurations.computeIfAbsent(new Limit(capacity, period), limit ->
+                Bucket4j.configurationBuilder().addLimit(Bandwidth.simple(limit.capacity, limit.period)).build());
     }
 
-    private Bucket getLimitBucket(String key, Long limit, Duration refreshInterval) {
-        return buckets.getProxy(key, getBucketConfiguration(limit, refreshInterval));
+    private ConsumptionProbe consume(String key, long capacity, Duration period, long tokens) {
+        ConsumeOrDrainCommand command = new ConsumeOrDrainCommand(tokens);
+        CommandResult<ConsumptionProbe> result = gridProxy.execute(key, command);
+        if (!result.isBucketNotFound()) {
+            return result.getData();
+        }
+        return gridProxy.createInitialStateAndExecute(key, getBucketConfiguration(capacity, period), command);
     }
 
-    private Supplier<BucketConfiguration> getBucketConfiguration(Long capacity, Duration period) {
-        return () -> Bucket4j.configurationBuilder().addLimit(Bandwidth.simple(capacity, period)).build();
+    private CompletableFuture<ConsumptionProbe> consumeAsync(String key, long capacity, Duration period, long tokens) {
+        ConsumeOrDrainCommand command = new ConsumeOrDrainCommand(tokens);
+        return gridProxy.executeAsync(key, command).thenCompose(result -> result.isBucketNotFound()
+                ? gridProxy.createInitialStateAndExecuteAsync(key, getBucketConfiguration(capacity, period), command)
+                : CompletableFuture.completedFuture(result.getData()));
     }
 
     private void setRemaining(Rate rate, long remaining, boolean isQuota) {
@@ -76,23 +98,128 @@ abstract class AbstractBucket4jRateLimiter<T extends AbstractBucketBuilder<T>, E
         }
     }
 
-    private void calcAndSetRemainingBucket(Long consume, Rate rate, Bucket bucket, boolean isQuota) {
-        ConsumptionProbe consumptionProbe = bucket.tryConsumeAndReturnRemaining(consume);
+    private void setRemaining(Rate rate, ConsumptionProbe consumptionProbe, boolean consumed, boolean isQuota) {
+        if (!consumed) {
+            // only checked, the reset of the consumed bucket applies
+            long availableTokens = consumptionProbe.getRemainingTokens();
+            setRemaining(rate, availableTokens > 0 ? availableTokens : -1L, isQuota);
+            return;
+        }
         long nanosToWaitForRefill = consumptionProbe.getNanosToWaitForRefill();
         rate.setReset(NANOSECONDS.toMillis(nanosToWaitForRefill));
         if (consumptionProbe.isConsumed()) {
-            long remainingTokens = consumptionProbe.getRemainingTokens();
-            setRemaining(rate, remainingTokens, isQuota);
+            setRemaining(rate, consumptionProbe.getRemainingTokens(), isQuota);
         } else {
             setRemaining(rate, -1L, isQuota);
-            bucket.tryConsumeAsMuchAsPossible(consume);
         }
     }
 
-    private void calcAndSetRemainingBucket(Bucket bucket, Rate rate, boolean isQuota) {
-        long availableTokens = bucket.getAvailableTokens();
-        long remaining = availableTokens > 0 ? availableTokens : -1;
-        setRemaining(rate, remaining, isQuota);
+    private CompletableFuture<Consumer<Rate>> calcRemainingBucketAsync(String key, long capacity, Duration period,
+                                                                       Long consume, boolean isQuota) {
+        boolean consumed = consume != null;
+        return consumeAsync(key, capacity, period, consumed ? consume : 0L)
+                .thenApply(consumptionProbe -> rate -> setRemaining(rate, consumptionProbe, consumed, isQuota));
+    }
+
+    private void calcAndSetRemainingBucket(String key, long capacity, Duration period, Long consume, Rate rate,
+                                           boolean isQuota) {
+        boolean consumed = consume != null;
+        ConsumptionProbe consumptionProbe = consume(key, capacity, period, consumed ? consume : 0L);
+        setRemaining(rate, consumptionProbe, consumed, isQuota);
+    }
+
+    /**
+     * Waits for an asynchronous result, failing with the exception the grid threw as the synchronous path does.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        if (!asyncModeSupported || policy.getLimit() == null || policy.getQuota() == null) {
+            return super.consume(policy, key, requestTime);
+        }
+        return join(consumeAsync(policy, key, requestTime));
+    }
+
+    @Override
+    public List<Rate> consumeAll(final List<Policy> policies, final List<String> keys, final Long requestTime) {
+        if (!asyncModeSupported || policies.size() < 2) {
+            return super.consumeAll(policies, keys, requestTime);
+        }
+        return join(consumeAllAsync(policies, keys, requestTime).toCompletableFuture());
+    }
+
+    @Override
+    public CompletionStage<List<Rate>> consumeAllAsync(final List<Policy> policies, final List<String> keys,
+                                                       final Long requestTime) {
+        if (!asyncModeSupported) {
+            return super.consumeAllAsync(policies, keys, requestTime);
+        }
+        if (requestTime == null) {
+            // the policies following an exceeded limit must not be consumed, so each waits for the previous one
+            CompletableFuture<List<Rate>> rates = CompletableFuture.completedFuture(new ArrayList<>(policies.size()));
+            for (int i = 0; i < policies.size(); i++) {
+                final Policy policy = policies.get(i);
+                final String key = keys.get(i);
+                rates = rates.thenCompose(consumed -> {
+                    int last = consumed.size() - 1;
+                    if (last >= 0 && isExceeded(policies.get(last), consumed.get(last))) {
+                        return CompletableFuture.completedFuture(consumed);
+                    }
+                    return consumeAsync(policy, key, null).thenApply(rate -> {
+                        consumed.add(rate);
+                        return consumed;
+                    });
+                });
+            }
+            return rates;
+        }
+        List<CompletableFuture<Rate>> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            rates.add(consumeAsync(policies.get(i), keys.get(i), requestTime));
+        }
+        return CompletableFuture.allOf(rates.toArray(new CompletableFuture[0]))
+                .thenApply(done -> rates.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Rate> consumeAsync(final Policy policy, final String key, final Long requestTime) {
+        if (!asyncModeSupported) {
+            return super.consumeAsync(policy, key, requestTime).toCompletableFuture();
+        }
+        final Duration refreshInterval = policy.getRefreshInterval();
+        final Long limit = policy.getLimit();
+        final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+        final Rate rate = new Rate(key, limit, quota, null, null, policy.getCapacity());
+
+        CompletableFuture<Consumer<Rate>> limitUpdate = CompletableFuture.completedFuture(r -> { });
+        if (limit != null) {
+            limitUpdate = calcRemainingBucketAsync(key, limit, refreshInterval,
+                    requestTime == null ? 1L : null, false);
+        }
+        CompletableFuture<Consumer<Rate>> quotaUpdate = CompletableFuture.completedFuture(r -> { });
+        if (quota != null) {
+            quotaUpdate = calcRemainingBucketAsync(key + QUOTA_SUFFIX, quota, refreshInterval, requestTime, true);
+        }
+        // applied in the same order as the synchronous calls, the quota reset wins over the limit reset
+        return limitUpdate.thenCombine(quotaUpdate, (updateLimit, updateQuota) -> {
+            updateLimit.accept(rate);
+            updateQuota.accept(rate);
+            return rate;
+        });
     }
 
     @Override
@@ -101,12 +228,7 @@ abstract class AbstractBucket4jRateLimiter<T extends AbstractBucketBuilder<T>, E
         if (limit == null) {
             return;
         }
-        Bucket bucket = getLimitBucket(key, limit, refreshInterval);
-        if (requestTime == null) {
-            calcAndSetRemainingBucket(1L, rate, bucket, false);
-        } else {
-            calcAndSetRemainingBucket(bucket, rate, false);
-        }
+        calcAndSetRemainingBucket(key, limit, refreshInterval, requestTime == null ? 1L : null, rate, false);
     }
 
     @Override
@@ -115,11 +237,34 @@ abstract class AbstractBucket4jRateLimiter<T extends AbstractBucketBuilder<T>, E
         if (quota == null) {
             return;
         }
-        Bucket bucket = getQuotaBucket(key, quota, refreshInterval);
-        if (requestTime != null) {
-            calcAndSetRemainingBucket(requestTime, rate, bucket, true);
-        } else {
-            calcAndSetRemainingBucket(bucket, rate, true);
+        calcAndSetRemainingBucket(key + QUOTA_SUFFIX, quota, refreshInterval, requestTime, rate, true);
+    }
+
+    private static final class Limit {
+
+        private final long capacity;
+        private final Duration period;
+
+        private Limit(long capacity, Duration period) {
+            this.capacity = capacity;
+            this.period = period;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Limit limit = (Limit) o;
+            return capacity == limit.capacity && period.equals(limit.period);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(capacity, period);
         }
     }
 }
@@ -18,9 +18,8 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.b
 
 import com.hazelcast.map.IMap;
 import io.github.bucket4j.grid.GridBucketState;
-import io.github.bucket4j.grid.ProxyManager;
-import io.github.bucket4j.grid.hazelcast.Hazelcast;
-import io.github.bucket4j.grid.hazelcast.HazelcastBucketBuilder;
+import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.hazelcast.HazelcastProxy;
 
 /**
  * Bucket4j rate limiter configuration.
@@ -28,18 +27,17 @@ import io.github.bucket4j.grid.hazelcast.HazelcastBucketBuilder;
  * @author Liel Chayoun
  * @since 2018-04-06
  */
-public class Bucket4jHazelcastRateLimiter extends AbstractBucket4jRateLimiter<HazelcastBucketBuilder, Hazelcast> {
+public class Bucket4jHazelcastRateLimiter extends AbstractBucket4jRateLimiter {
 
     private final IMap<String, GridBucketState> rateLimit;
 
     public Bucket4jHazelcastRateLimiter(final IMap<String, GridBucketState> rateLimit) {
-        super(io.github.bucket4j.grid.hazelcast.Hazelcast.class);
         this.rateLimit = rateLimit;
         super.init();
     }
 
     @Override
-    protected ProxyManager<String> getProxyManager(io.github.bucket4j.grid.hazelcast.Hazelcast extension) {
-        return extension.proxyManagerForMap(rateLimit);
+    protected GridProxy<String> getGridProxy() {
+        return new HazelcastProxy<>(rateLimit);
     }
 }
@@ -17,9 +17,8 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
 
 import io.github.bucket4j.grid.GridBucketState;
-import io.github.bucket4j.grid.ProxyManager;
-import io.github.bucket4j.grid.ignite.Ignite;
-import io.github.bucket4j.grid.ignite.IgniteBucketBuilder;
+import io.github.bucket4j.grid.GridProxy;
+import io.github.bucket4j.grid.ignite.IgniteProxy;
 import org.apache.ignite.IgniteCache;
 
 /**
@@ -28,18 +27,17 @@ import org.apache.ignite.IgniteCache;
  * @author Liel Chayoun
  * @since 2018-04-06
  */
-public class Bucket4jIgniteRateLimiter extends AbstractBucket4jRateLimiter<IgniteBucketBuilder, Ignite> {
+public class Bucket4jIgniteRateLimiter extends AbstractBucket4jRateLimiter {
 
     private final IgniteCache<String, GridBucketState> cache;
 
     public Bucket4jIgniteRateLimiter(final IgniteCache<String, GridBucketState> cache) {
-        super(io.github.bucket4j.grid.ignite.Ignite.class);
         this.cache = cache;
         super.init();
     }
 
     @Override
-    protected ProxyManager<String> getProxyManager(io.github.bucket4j.grid.ignite.Ignite extension) {
-        return extension.proxyManagerForCache(cache);
+    protected GridProxy<String> getGridProxy() {
+        return new IgniteProxy<>(cache);
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
+
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.grid.GridBucketState;
+import io.github.bucket4j.grid.GridCommand;
+
+/**
+ * Grid command consuming tokens from a bucket, or every available token if there are not enough of them.
+ *
+ * <p>The probe reports the tokens available before a rejected consumption and the time to wait until it would
+ * succeed, so a rejection costs a single grid operation. Consuming no tokens only reads the available tokens and
+ * leaves the stored state untouched.</p>
+ */
+public class ConsumeOrDrainCommand implements GridCommand<ConsumptionProbe> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long tokensToConsume;
+    private boolean bucketStateModified;
+
+    public ConsumeOrDrainCommand(final long tokensToConsume) {
+        this.tokensToConsume = tokensToConsume;
+    }
+
+    @Override
+    public ConsumptionProbe execute(final GridBucketState state, final long currentTimeNanos) {
+        state.refillAllBandwidth(currentTimeNanos);
+        long availableTokens = state.getAvailableTokens();
+        if (tokensToConsume <= availableTokens) {
+            state.consume(tokensToConsume);
+            bucketStateModified = tokensToConsume > 0;
+            return ConsumptionProbe.consumed(availableTokens - tokensToConsume);
+        }
+        long nanosToWaitForRefill = state.calculateDelayNanosAfterWillBePossibleToConsume(tokensToConsume,
+                currentTimeNanos);
+        if (availableTokens > 0) {
+            state.consume(availableTokens);
+        }
+        bucketStateModified = availableTokens > 0;
+        return ConsumptionProbe.rejected(availableTokens, nanosToWaitForRefill);
+    }
+
+    @Override
+    public boolean isBucketStateModified() {
+        return bucketStateModified;
+    }
+
+    public long getTokensToConsume() {
+        return tokensToConsume;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * {@link JpaRateLimiter} counting usage locally and writing it to the database every flush interval.
+ *
+ * <p>The first request for a key, and the first one after its window ended, goes to the database. Following requests
+ * are counted against the last rate read, and every flush writes the usage counted since the previous one for all
+ * keys in a single transaction: the rates are locked with one query, updated in memory and written back when the
+ * transaction commits, as JDBC batches when {@code spring.jpa.properties.hibernate.jdbc.batch_size} is set. A key
+ * whose pending usage exceeds the maximum drift, as a share of its limit or quota, is flushed right away, which
+ * bounds what a node may overshoot by between two flushes.</p>
+ */
+public class BatchingJpaRateLimiter extends JpaRateLimiter implements DisposableBean {
+
+    private final RateLimiterErrorHandler rateLimiterErrorHandler;
+    private final RateLimiterRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final double maxDrift;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flushExecutor;
+
+    public BatchingJpaRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                  final RateLimiterRepository repository,
+                                  final PlatformTransactionManager transactionManager,
+                                  final double maxDrift, final Duration flushInterval) {
+        super(rateLimiterErrorHandler, repository);
+        this.rateLimiterErrorHandler = rateLimiterErrorHandler;
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxDrift = maxDrift;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-jpa-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, MILLISECONDS);
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final long limitUsage = policy.getLimit() != null && requestTime == null ? 1L : 0L;
+        final long quotaUsage = policy.getQuota() != null && requestTime != null ? requestTime : 0L;
+
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null || entry.isExpired()) {
+                Entry created = new Entry(key, policy, super.consume(policy, key, requestTime));
+                if (entry == null ? entries.putIfAbsent(key, created) == null
+                    : entries.replace(key, entry, created)) {
+                    return created.view();
+                }
+                // another request created the entry meanwhile, the usage is already written
+                return entries.getOrDefault(key, created).view();
+            }
+
+            entry.policy = policy;
+            long pendingLimit = entry.pendingLimit.addAndGet(limitUsage);
+            long pendingQuota = entry.pendingQuota.addAndGet(quotaUsage);
+            if (!entry.touch()) {
+                // a flush forgot the entry meanwhile and would never write the usage, count it on the next entry
+                entry.pendingLimit.addAndGet(-limitUsage);
+                entry.pendingQuota.addAndGet(-quotaUsage);
+                continue;
+            }
+            if (exceedsDrift(policy, pendingLimit, pendingQuota)) {
+                flush(Collections.singletonList(entry));
+            }
+            return entry.view();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flushExecutor.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Flushes the usage counted for every key and forgets keys not used since the previous run.
+     */
+    void flush() {
+        List<Entry> batch = new ArrayList<>();
+        entries.forEach((key, entry) -> {
+            if (entry.untouch() || entry.hasPending()) {
+                batch.add(entry);
+            } else if (entry.forget()) {
+                entries.remove(key, entry);
+            }
+        });
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private boolean exceedsDrift(final Policy policy, final long pendingLimit, final long pendingQuota) {
+        return policy.getLimit() != null && pendingLimit > policy.getLimit() * maxDrift
+            || policy.getQuota() != null && pendingQuota > policy.getQuota().toMillis() * maxDrift;
+    }
+
+    private void flush(final List<Entry> batch) {
+        synchronized (flushLock) {
+            // the usage stays pending until the stored rate includes it, so the local view never overestimates
+            final long[] limitUsage = new long[batch.size()];
+            final long[] quotaUsage = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                limitUsage[i] = batch.get(i).pendingLimit.get();
+                quotaUsage[i] = batch.get(i).pendingQuota.get();
+            }
+            Rate[] written;
+            try {
+                written = transactionTemplate.execute(status -> write(batch, limitUsage, quotaUsage));
+            } catch (RuntimeException e) {
+                // keep the usage for the next flush
+                batch.forEach(entry -> rateLimiterErrorHandler.handleSaveError(entry.key, e));
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Entry entry = batch.get(i);
+                entry.stored = written[i];
+                entry.pendingLimit.addAndGet(-limitUsage[i]);
+                entry.pendingQuota.addAndGet(-quotaUsage[i]);
+            }
+        }
+    }
+
+    private Rate[] write(final List<Entry> batch, final long[] limitUsage, final long[] quotaUsage) {
+        Map<String, Rate> locked = new HashMap<>();
+        for (Rate rate : repository.lockAll(batch.stream().map(entry -> entry.key).collect(toList()))) {
+            locked.put(rate.getKey(), rate);
+        }
+        Rate[] written = new Rate[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            Policy policy = entry.policy;
+            Rate stored = locked.get(entry.key);
+            Rate rate = create(policy, entry.key, stored);
+            updateRate(policy, rate, limitUsage[i], quotaUsage[i]);
+            if (rate != stored) {
+                // missing or expired, merged into the managed rate if there is one
+                repository.save(rate);
+            }
+            written[i] = rate;
+        }
+        return written;
+    }
+
+    private static final class Entry {
+
+        private static final int UNTOUCHED = 0;
+        private static final int TOUCHED = 1;
+        private static final int FORGOTTEN = 2;
+
+        private final String key;
+        private final AtomicLong pendingLimit = new AtomicLong();
+        private final AtomicLong pendingQuota = new AtomicLong();
+        private final AtomicInteger state = new AtomicInteger(UNTOUCHED);
+        private volatile Policy policy;
+        private volatile Rate stored;
+
+        private Entry(String key, Policy policy, Rate stored) {
+            this.key = key;
+            this.policy = policy;
+            this.stored = stored;
+        }
+
+        /**
+         * Marks the entry used since the previous flush, after counting the usage, unless a flush forgot it.
+         */
+        private boolean touch() {
+            while (true) {
+                int current = state.get();
+                if (current == FORGOTTEN) {
+                    return false;
+                }
+                if (current == TOUCHED || state.compareAndSet(UNTOUCHED, TOUCHED)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean untouch() {
+            return state.compareAndSet(TOUCHED, UNTOUCHED);
+        }
+
+        /**
+         * Forgets the entry unless it was used since the previous flush, following usage then goes to another entry.
+         */
+        private boolean forget() {
+            return state.compareAndSet(UNTOUCHED, FORGOTTEN);
+        }
+
+        private boolean hasPending() {
+            return pendingLimit.get() > 0 || pendingQuota.get() > 0;
+        }
+
+        private boolean isExpired() {
+            Rate rate = stored;
+            return rate == null || rate.getExpiration().getTime() < System.currentTimeMillis();
+        }
+
+        private Rate view() {
+            Rate rate = stored;
+            Long remaining = rate.getRemaining() != null
+                ? Math.max(-1L, rate.getRemaining() - pendingLimit.get()) : null;
+            Long remainingQuota = rate.getRemainingQuota() != null
+                ? Math.max(-1L, rate.getRemainingQuota() - pendingQuota.get()) : null;
+            long reset = Math.max(0L, rate.getExpiration().getTime() - System.currentTimeMillis());
+            return new Rate(key, remaining, remainingQuota, reset, rate.getExpiration(), rate.getCapacity());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Removes the rates whose window has ended from the database every cleanup interval.
+ *
+ * <p>Expired rates are replaced on the next request for their key, but rates of keys not seen again would otherwise
+ * stay in the table forever.</p>
+ */
+public class ExpiredRateCleaner implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiredRateCleaner.class);
+
+    private final RateLimiterRepository repository;
+    private final ScheduledExecutorService cleanupExecutor;
+
+    public ExpiredRateCleaner(final RateLimiterRepository repository, final Duration cleanupInterval) {
+        this.repository = repository;
+        this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-jpa-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = cleanupInterval.toMillis();
+        this.cleanupExecutor.scheduleWithFixedDelay(this::cleanup, interval, interval, MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        cleanupExecutor.shutdownNow();
+    }
+
+    void cleanup() {
+        try {
+            int removed = repository.deleteExpired(new Date());
+            log.debug("Removed {} expired rates", removed);
+        } catch (RuntimeException e) {
+            log.warn("Failed removing expired rates", e);
+        }
+    }
+}
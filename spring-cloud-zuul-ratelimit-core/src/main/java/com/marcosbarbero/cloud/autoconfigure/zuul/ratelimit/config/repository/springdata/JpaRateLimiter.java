@@ -18,26 +18,79 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.s
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.AbstractRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import java.util.Date;
+import java.util.Optional;
+import org.springframework.dao.DataIntegrityViolationException;
 
 /**
  * JPA {@link RateLimiter} configuration.
  *
+ * <p>Usage is consumed with a conditional {@code UPDATE} and the updated rate read back with a {@code SELECT}, two
+ * statements in one transaction, so rows are never merged and concurrent updates from any node are applied by the
+ * database. A rate whose window has ended is replaced with another conditional {@code UPDATE}, and a missing one is
+ * inserted, retrying the update once if another node inserted or replaced it first.</p>
+ *
  * @author Marcos Barbero
  * @author Liel Chayoun
  * @since 2017-06-23
  */
 public class JpaRateLimiter extends AbstractRateLimiter {
 
+    private final RateLimiterErrorHandler rateLimiterErrorHandler;
     private final RateLimiterRepository repository;
 
     public JpaRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
                           final RateLimiterRepository repository) {
         super(rateLimiterErrorHandler);
+        this.rateLimiterErrorHandler = rateLimiterErrorHandler;
         this.repository = repository;
     }
 
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final long limitUsage = policy.getLimit() != null && requestTime == null ? 1L : 0L;
+        final long quotaUsage = policy.getQuota() != null && requestTime != null ? requestTime : 0L;
+        try {
+            return consume(policy, key, limitUsage, quotaUsage, true);
+        } catch (RuntimeException e) {
+            rateLimiterErrorHandler.handleSaveError(key, e);
+            Rate rate = create(policy, key, null);
+            updateRate(policy, rate, limitUsage, quotaUsage);
+            return rate;
+        }
+    }
+
+    private Rate consume(final Policy policy, final String key, final long limitUsage, final long quotaUsage,
+                         final boolean retry) {
+        final Date now = new Date();
+        Optional<Rate> updated = this.repository.consume(key, limitUsage, quotaUsage, now);
+        if (updated.isPresent()) {
+            Rate rate = updated.get();
+            rate.setReset(Math.max(0L, rate.getExpiration().getTime() - now.getTime()));
+            return rate;
+        }
+
+        Rate rate = create(policy, key, null);
+        updateRate(policy, rate, limitUsage, quotaUsage);
+        if (this.repository.renew(rate, now) > 0) {
+            return rate;
+        }
+        try {
+            // fails instead of overwriting when the rate exists, as it does if another node replaced it meanwhile
+            this.repository.insert(rate);
+            return rate;
+        } catch (DataIntegrityViolationException e) {
+            if (!retry) {
+                throw e;
+            }
+            // another node inserted or replaced the rate meanwhile
+            return consume(policy, key, limitUsage, quotaUsage, false);
+        }
+    }
+
     @Override
     protected Rate getRate(String key) {
         return this.repository.findById(key).orElse(null);
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Repository fragment consuming usage from stored rates without merging them.
+ */
+public interface RateConsumer {
+
+    /**
+     * Consumes usage from the rate of a key unless its window has ended, and reads the updated rate back in the same
+     * transaction. Remaining values are clamped at -1.
+     *
+     * @return the updated rate, empty if there is no rate for the key or it has expired
+     */
+    Optional<Rate> consume(String key, long limitUsage, long quotaUsage, Date now);
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.util.Date;
+import java.util.Optional;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * {@link RateConsumer} running a conditional {@code UPDATE} and a {@code SELECT} of the same row in one transaction,
+ * so the rate read back includes the usage and the read of a concurrent consume never interleaves with it.
+ */
+class RateConsumerImpl implements RateConsumer {
+
+    private static final String CONSUME = "update Rate r set "
+        + "r.remaining = case when (r.remaining - :limitUsage) < -1 then -1 else (r.remaining - :limitUsage) end, "
+        + "r.remainingQuota = case when (r.remainingQuota - :quotaUsage) < -1 then -1 "
+        + "else (r.remainingQuota - :quotaUsage) end "
+        + "where r.key = :key and r.expiration >= :now";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public Optional<Rate> consume(String key, long limitUsage, long quotaUsage, Date now) {
+        int updated = entityManager.createQuery(CONSUME)
+            .setParameter("key", key)
+            .setParameter("limitUsage", limitUsage)
+            .setParameter("quotaUsage", quotaUsage)
+            .setParameter("now", now)
+            .executeUpdate();
+        if (updated == 0) {
+            return Optional.empty();
+        }
+        // the update bypassed the persistence context, a rate it still holds would be stale
+        entityManager.clear();
+        return Optional.ofNullable(entityManager.find(Rate.class, key));
+    }
+}
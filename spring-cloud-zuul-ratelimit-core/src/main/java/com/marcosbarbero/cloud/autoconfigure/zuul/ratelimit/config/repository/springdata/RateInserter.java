@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+
+/**
+ * Repository fragment inserting rates without merging them into existing rows.
+ */
+public interface RateInserter {
+
+    /**
+     * Inserts a rate, failing if the key is already stored.
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException if another rate is stored with the same key
+     */
+    void insert(Rate rate);
+}
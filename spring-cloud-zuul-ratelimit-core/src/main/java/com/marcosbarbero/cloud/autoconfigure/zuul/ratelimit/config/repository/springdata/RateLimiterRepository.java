@@ -18,11 +18,48 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.s
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.LockModeType;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * @author Liel Chayoun
  */
-public interface RateLimiterRepository extends CrudRepository<Rate, String> {
+public interface RateLimiterRepository extends CrudRepository<Rate, String>, RateConsumer, RateInserter {
 
+    /**
+     * Replaces the rate of a key whose window has ended, in a single statement.
+     *
+     * @return the number of updated rates, 0 if there is no rate for the key or it has not expired
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Rate r set r.remaining = :#{#rate.remaining}, r.remainingQuota = :#{#rate.remainingQuota}, "
+        + "r.reset = :#{#rate.reset}, r.expiration = :#{#rate.expiration}, r.capacity = :#{#rate.capacity} "
+        + "where r.key = :#{#rate.key} and r.expiration < :now")
+    int renew(@Param("rate") Rate rate, @Param("now") Date now);
+
+    /**
+     * Loads the rates of the given keys, locking them until the surrounding transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from Rate r where r.key in :keys order by r.key")
+    List<Rate> lockAll(@Param("keys") Collection<String> keys);
+
+    /**
+     * Removes every rate whose window has ended, in a single statement.
+     *
+     * @return the number of removed rates
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Rate r where r.expiration < :now")
+    int deleteExpired(@Param("now") Date now);
 }
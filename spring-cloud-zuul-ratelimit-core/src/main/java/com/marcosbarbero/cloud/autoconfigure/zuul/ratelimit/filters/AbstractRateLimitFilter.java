@@ -16,12 +16,13 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
 
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededException;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResolvedRequest;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.context.RequestContext;
 import org.springframework.cloud.netflix.zuul.filters.Route;
@@ -30,8 +31,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.*;
 
@@ -47,6 +50,9 @@ abstract class AbstractRateLimitFilter extends ZuulFilter {
 
     private final RouteLocator routeLocator;
     private final UrlPathHelper urlPathHelper;
+    private final ConcurrentMap<String, RoutePolicies> routePolicies = new ConcurrentHashMap<>();
+    private volatile RoutePolicies defaultPolicies;
+    private volatile DenyOrigins denyOrigins;
 
     AbstractRateLimitFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
                             final UrlPathHelper urlPathHelper, final RateLimitUtils rateLimitUtils) {
@@ -97,23 +103,60 @@ abstract class AbstractRateLimitFilter extends ZuulFilter {
             return policies;
         }
 
+        policies = routePolicies(route).match(request, route, rateLimitUtils);
+
+        addObjectToCurrentRequestContext(CURRENT_REQUEST_POLICY, policies);
+
+        return policies;
+    }
+
+    private RoutePolicies routePolicies(Route route) {
         String routeId = route != null ? route.getId() : null;
+        List<Policy> policies = properties.getPolicies(routeId);
+        RoutePolicies compiled = routeId != null ? routePolicies.get(routeId) : defaultPolicies;
+        if (compiled == null || !compiled.isCompiledFrom(policies)) {
+            compiled = RoutePolicies.compile(policies);
+            if (routeId != null) {
+                routePolicies.put(routeId, compiled);
+            } else {
+                defaultPolicies = compiled;
+            }
+        }
+        return compiled;
+    }
 
-        RequestContext.getCurrentContext().put(ALREADY_LIMITED, false);
+    /**
+     * Returns the keys of the given policies, generated once per request and shared by the pre and post filters.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<String> keys(HttpServletRequest request, Route route, List<Policy> policies,
+                                RateLimitKeyGenerator rateLimitKeyGenerator) {
+        List<String> keys = (List<String>) RequestContext.getCurrentContext().get(CURRENT_REQUEST_KEYS);
+        if (keys != null && keys.size() == policies.size()) {
+            return keys;
+        }
 
-        policies = properties.getPolicies(routeId).stream()
-                .filter(policy -> applyPolicy(request, route, policy))
-                .collect(Collectors.toList());
+        keys = new ArrayList<>(policies.size());
+        for (Policy policy : policies) {
+            keys.add(rateLimitKeyGenerator.key(request, route, policy));
+        }
 
-        addObjectToCurrentRequestContext(CURRENT_REQUEST_POLICY, policies);
+        addObjectToCurrentRequestContext(CURRENT_REQUEST_KEYS, keys);
 
-        return policies;
+        return keys;
     }
 
     private boolean originIsOnDenyRequest(HttpServletRequest request) {
-        RateLimitProperties.DenyRequest denyRequest = properties.getDenyRequest();
-        return denyRequest.getOrigins().stream()
-                .anyMatch(origin -> RateLimitType.ORIGIN.apply(request, null, rateLimitUtils, origin));
+        List<String> origins = properties.getDenyRequest().getOrigins();
+        if (origins.isEmpty()) {
+            return false;
+        }
+        DenyOrigins compiled = denyOrigins;
+        if (compiled == null || !compiled.isCompiledFrom(origins)) {
+            compiled = new DenyOrigins(origins);
+            denyOrigins = compiled;
+        }
+        return compiled.trie.contains(ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress());
     }
 
     private void addObjectToCurrentRequestContext(String key, Object object) {
@@ -122,12 +165,23 @@ abstract class AbstractRateLimitFilter extends ZuulFilter {
         }
     }
 
-    private boolean applyPolicy(HttpServletRequest request, Route route, Policy policy) {
-        List<MatchType> types = policy.getType();
-        boolean isAlreadyLimited = (boolean) RequestContext.getCurrentContext().get(ALREADY_LIMITED);
-        if (policy.isBreakOnMatch() && !isAlreadyLimited && types.stream().allMatch(type -> type.apply(request, route, rateLimitUtils))) {
-            RequestContext.getCurrentContext().put(ALREADY_LIMITED, true);
+    /**
+     * Deny list compiled again when the origins are replaced, as happens when the properties are bound again.
+     */
+    private static final class DenyOrigins {
+
+        private final List<String> source;
+        private final int size;
+        private final CidrTrie trie;
+
+        private DenyOrigins(List<String> source) {
+            this.source = source;
+            this.size = source.size();
+            this.trie = CidrTrie.of(source);
+        }
+
+        private boolean isCompiledFrom(List<String> origins) {
+            return source == origins && size == origins.size();
         }
-        return (types.isEmpty() || types.stream().allMatch(type -> type.apply(request, route, rateLimitUtils))) && !isAlreadyLimited;
     }
 }
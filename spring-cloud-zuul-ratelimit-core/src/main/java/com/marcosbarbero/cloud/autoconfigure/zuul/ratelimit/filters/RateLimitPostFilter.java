@@ -20,12 +20,17 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyG
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueue;
 import com.netflix.zuul.context.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.List;
 
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
 import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
@@ -36,15 +41,26 @@ import static org.springframework.cloud.netflix.zuul.filters.support.FilterConst
  */
 public class RateLimitPostFilter extends AbstractRateLimitFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(RateLimitPostFilter.class);
+
     private final RateLimiter rateLimiter;
     private final RateLimitKeyGenerator rateLimitKeyGenerator;
+    private final WriteBehindQuotaQueue writeBehindQuotaQueue;
 
     public RateLimitPostFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
                                final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
                                final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils) {
+        this(properties, routeLocator, urlPathHelper, rateLimiter, rateLimitKeyGenerator, rateLimitUtils, null);
+    }
+
+    public RateLimitPostFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
+                               final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
+                               final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils,
+                               final WriteBehindQuotaQueue writeBehindQuotaQueue) {
         super(properties, routeLocator, urlPathHelper, rateLimitUtils);
         this.rateLimiter = rateLimiter;
         this.rateLimitKeyGenerator = rateLimitKeyGenerator;
+        this.writeBehindQuotaQueue = writeBehindQuotaQueue;
     }
 
     @Override
@@ -74,11 +90,25 @@ public class RateLimitPostFilter extends AbstractRateLimitFilter {
         HttpServletRequest request = ctx.getRequest();
         Route route = route(request);
 
-        policy(route, request).forEach(policy -> {
-            long requestTime = System.currentTimeMillis() - getRequestStartTime();
-            String key = rateLimitKeyGenerator.key(request, route, policy);
-            rateLimiter.consume(policy, key, requestTime > 0 ? requestTime : 1);
-        });
+        List<Policy> policies = policy(route, request);
+        if (policies.isEmpty()) {
+            return null;
+        }
+        List<String> keys = keys(request, route, policies, rateLimitKeyGenerator);
+        long requestTime = Math.max(1L, System.currentTimeMillis() - getRequestStartTime());
+        if (writeBehindQuotaQueue != null) {
+            for (int i = 0; i < policies.size(); i++) {
+                writeBehindQuotaQueue.offer(policies.get(i), keys.get(i), requestTime);
+            }
+            return null;
+        }
+        // the response does not depend on the consumed quota, so there is no need to wait for it
+        rateLimiter.consumeAllAsync(policies, keys, requestTime)
+                .whenComplete((rates, e) -> {
+                    if (e != null) {
+                        log.warn("Failed consuming quota for " + keys, e);
+                    }
+                });
 
         return null;
     }
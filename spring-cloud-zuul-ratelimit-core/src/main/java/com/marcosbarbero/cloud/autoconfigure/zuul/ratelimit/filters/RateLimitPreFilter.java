@@ -18,28 +18,31 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
 
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.NONE;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.VERBOSE;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_QUOTA;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING_QUOTA;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.RATE_LIMIT_EXCEEDED;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames.LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames.QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames.REMAINING;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames.REMAINING_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames.RESET;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
 
-import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededEvent;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededException;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResolvedRequest;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResponseHeaderNames;
 import com.netflix.zuul.context.RequestContext;
 
 import java.time.Duration;
-import java.util.Map;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -56,9 +59,12 @@ import org.springframework.web.util.UrlPathHelper;
  */
 public class RateLimitPreFilter extends AbstractRateLimitFilter {
 
+    private static final long VERBOSE_HEADER_NAMES_CACHE_SIZE = 10_000L;
+
     private final RateLimiter rateLimiter;
     private final RateLimitKeyGenerator rateLimitKeyGenerator;
     private final ApplicationEventPublisher eventPublisher;
+    private final ResponseHeaderNames responseHeaderNames = new ResponseHeaderNames(VERBOSE_HEADER_NAMES_CACHE_SIZE);
 
     public RateLimitPreFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
                               final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
@@ -87,47 +93,53 @@ public class RateLimitPreFilter extends AbstractRateLimitFilter {
         final HttpServletRequest request = ctx.getRequest();
         final Route route = route(request);
 
-        policy(route, request).forEach(policy -> {
-            Map<String, String> responseHeaders = Maps.newHashMap();
+        final List<Policy> policies = policy(route, request);
+        final List<String> keys = keys(request, route, policies, rateLimitKeyGenerator);
+        final List<Rate> rates = rateLimiter.consumeAll(policies, keys, null);
+
+        final ResponseHeadersVerbosity verbosity = properties.getResponseHeaders();
 
-            final String key = rateLimitKeyGenerator.key(request, route, policy);
-            final Rate rate = rateLimiter.consume(policy, key, null);
+        for (int i = 0; i < rates.size(); i++) {
+            final Policy policy = policies.get(i);
+            final String key = keys.get(i);
+            final Rate rate = rates.get(i);
+            final String[] headerNames = VERBOSE.equals(verbosity) ? responseHeaderNames.verbose(key)
+                : responseHeaderNames.standard();
+            final boolean headers = !NONE.equals(verbosity);
 
             final Long limit = policy.getLimit();
             final Long remaining = rate.getRemaining();
-            if (limit != null) {
-                responseHeaders.put(HEADER_LIMIT, String.valueOf(limit));
-                responseHeaders.put(HEADER_REMAINING, String.valueOf(Math.max(remaining, 0)));
+            if (limit != null && headers) {
+                response.setHeader(headerNames[LIMIT], String.valueOf(limit));
+                response.setHeader(headerNames[REMAINING], String.valueOf(Math.max(remaining, 0)));
             }
 
             final Duration quota = policy.getQuota();
             final Long remainingQuota = rate.getRemainingQuota();
             if (quota != null) {
                 request.setAttribute(REQUEST_START_TIME, System.currentTimeMillis());
-                responseHeaders.put(HEADER_QUOTA, String.valueOf(quota.getSeconds()));
-                responseHeaders.put(HEADER_REMAINING_QUOTA, String.valueOf(MILLISECONDS.toSeconds(Math.max(remainingQuota, 0))));
+                if (headers) {
+                    response.setHeader(headerNames[QUOTA], String.valueOf(quota.getSeconds()));
+                    response.setHeader(headerNames[REMAINING_QUOTA],
+                        String.valueOf(MILLISECONDS.toSeconds(Math.max(remainingQuota, 0))));
+                }
             }
 
-            responseHeaders.put(HEADER_RESET, String.valueOf(rate.getReset()));
-
-            if (!NONE.equals(properties.getResponseHeaders())) {
-                final String httpHeaderKey = key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_");
-                for (Map.Entry<String, String> headersEntry : responseHeaders.entrySet()) {
-                    String header = VERBOSE.equals(properties.getResponseHeaders()) ? headersEntry.getKey() + "-" + httpHeaderKey : headersEntry.getKey();
-                    response.setHeader(header, headersEntry.getValue());
-                }
+            if (headers) {
+                response.setHeader(headerNames[RESET], String.valueOf(rate.getReset()));
             }
 
-            if ((limit != null && remaining < 0) || (quota != null && remainingQuota < 0)) {
+            if (RateLimiter.isExceeded(policy, rate)) {
                 ctx.setResponseStatusCode(HttpStatus.TOO_MANY_REQUESTS.value());
                 ctx.put(RATE_LIMIT_EXCEEDED, "true");
                 ctx.setSendZuulResponse(false);
 
-                eventPublisher.publishEvent(new RateLimitExceededEvent(this, policy, rateLimitUtils.getRemoteAddress(request)));
+                String remoteAddress = ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress();
+                eventPublisher.publishEvent(new RateLimitExceededEvent(this, policy, remoteAddress));
 
                 throw new RateLimitExceededException();
             }
-        });
+        }
 
         return null;
     }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.ALREADY_LIMITED;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ResolvedRequest;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.UrlPatterns;
+import com.netflix.zuul.context.RequestContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+/**
+ * Policies of a route compiled for matching requests.
+ *
+ * <p>Match types without a matcher are dropped. The remaining match types are shared by the policies using the same
+ * type and matcher, so each of them is evaluated at most once per request, the cheapest first. Origins are compiled
+ * into a {@link CidrTrie}, and all URL patterns of the route are matched together by {@link UrlPatterns} the first
+ * time one of them is needed. Nothing is compiled from the matched route, whose path differs from one request to the
+ * next, so the policies are only compiled again when the policy list of the route or any of its policies is
+ * replaced, as happens when the properties are bound again on a refresh.</p>
+ */
+final class RoutePolicies {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCH = 1;
+    private static final byte NO_MATCH = 2;
+
+    private final List<Policy> source;
+    private final Policy[] sourcePolicies;
+    private final MatchType[] matchTypes;
+    private final CidrTrie[] origins;
+    private final int[] urlPatternIndexes;
+    private final UrlPatterns urlPatterns;
+    private final CompiledPolicy[] policies;
+
+    private RoutePolicies(List<Policy> source, MatchType[] matchTypes, CompiledPolicy[] policies) {
+        this.source = source;
+        this.sourcePolicies = source.toArray(new Policy[0]);
+        this.matchTypes = matchTypes;
+        this.origins = new CidrTrie[matchTypes.length];
+        List<Integer> urlPatternIndexes = new ArrayList<>();
+        List<String> urlPatterns = new ArrayList<>();
+        for (int i = 0; i < matchTypes.length; i++) {
+            if (matchTypes[i].getType() == RateLimitType.ORIGIN) {
+                origins[i] = CidrTrie.of(matchTypes[i].getMatcher());
+            } else if (matchTypes[i].getType() == RateLimitType.URL_PATTERN) {
+                urlPatternIndexes.add(i);
+                urlPatterns.add(matchTypes[i].getMatcher());
+            }
+        }
+        this.urlPatternIndexes = urlPatternIndexes.stream().mapToInt(Integer::intValue).toArray();
+        this.urlPatterns = UrlPatterns.of(urlPatterns);
+        this.policies = policies;
+    }
+
+    static RoutePolicies compile(final List<Policy> source) {
+        Map<String, Integer> indexes = new HashMap<>();
+        List<MatchType> matchTypes = new ArrayList<>();
+        List<CompiledPolicy> policies = new ArrayList<>(source.size());
+        for (Policy policy : source) {
+            List<Integer> policyIndexes = new ArrayList<>();
+            for (MatchType matchType : policy.getType()) {
+                if (StringUtils.isEmpty(matchType.getMatcher())) {
+                    continue;
+                }
+                String id = matchType.getType().name() + ':' + matchType.getMatcher();
+                Integer index = indexes.get(id);
+                if (index == null) {
+                    index = matchTypes.size();
+                    indexes.put(id, index);
+                    matchTypes.add(matchType);
+                }
+                policyIndexes.add(index);
+            }
+            policyIndexes.sort(Comparator.comparingInt(index -> cost(matchTypes.get(index).getType())));
+            int[] compiledIndexes = policyIndexes.stream().mapToInt(Integer::intValue).toArray();
+            policies.add(new CompiledPolicy(policy, compiledIndexes));
+        }
+        return new RoutePolicies(source, matchTypes.toArray(new MatchType[0]),
+                policies.toArray(new CompiledPolicy[0]));
+    }
+
+    /**
+     * Relative cost of evaluating a match type, reading the route or request is cheaper than resolving the user or
+     * origin.
+     */
+    private static int cost(RateLimitType type) {
+        switch (type) {
+            case URL:
+            case HTTP_METHOD:
+            case HTTPMETHOD:
+                return 0;
+            case HTTP_HEADER:
+                return 1;
+            case URL_PATTERN:
+                return 2;
+            case USER:
+                return 3;
+            case ORIGIN:
+                return 4;
+            default:
+                return 5;
+        }
+    }
+
+    boolean isCompiledFrom(final List<Policy> policies) {
+        if (source != policies || sourcePolicies.length != policies.size()) {
+            return false;
+        }
+        for (int i = 0; i < sourcePolicies.length; i++) {
+            if (sourcePolicies[i] != policies.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the policies matching the request, leaving out those following a matching policy that breaks on
+     * match.
+     */
+    List<Policy> match(final HttpServletRequest request, final Route route, final RateLimitUtils rateLimitUtils) {
+        byte[] results = new byte[matchTypes.length];
+        List<Policy> matched = new ArrayList<>(policies.length);
+        boolean alreadyLimited = false;
+        for (CompiledPolicy policy : policies) {
+            if (!matches(policy, request, route, rateLimitUtils, results)) {
+                continue;
+            }
+            if (!alreadyLimited) {
+                matched.add(policy.policy);
+            }
+            alreadyLimited |= policy.policy.isBreakOnMatch();
+        }
+        RequestContext.getCurrentContext().put(ALREADY_LIMITED, alreadyLimited);
+        return matched;
+    }
+
+    private boolean matches(CompiledPolicy policy, HttpServletRequest request, Route route,
+                            RateLimitUtils rateLimitUtils, byte[] results) {
+        for (int index : policy.matchTypes) {
+            byte result = results[index];
+            if (result == UNKNOWN) {
+                if (matchTypes[index].getType() == RateLimitType.URL_PATTERN) {
+                    matchUrlPatterns(request, rateLimitUtils, results);
+                    result = results[index];
+                } else {
+                    result = apply(index, request, route, rateLimitUtils) ? MATCH : NO_MATCH;
+                    results[index] = result;
+                }
+            }
+            if (result == NO_MATCH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void matchUrlPatterns(HttpServletRequest request, RateLimitUtils rateLimitUtils, byte[] results) {
+        boolean[] matches = new boolean[urlPatternIndexes.length];
+        urlPatterns.match(ResolvedRequest.of(request, rateLimitUtils).getPath(), matches);
+        for (int i = 0; i < matches.length; i++) {
+            results[urlPatternIndexes[i]] = matches[i] ? MATCH : NO_MATCH;
+        }
+    }
+
+    private boolean apply(int index, HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils) {
+        CidrTrie origin = origins[index];
+        if (origin != null) {
+            return origin.contains(ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress());
+        }
+        return matchTypes[index].apply(request, route, rateLimitUtils);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutePolicies{policies=" + policies.length
+                + ", matchTypes=" + Arrays.toString(matchTypes) + "}";
+    }
+
+    private static final class CompiledPolicy {
+
+        private final Policy policy;
+        private final int[] matchTypes;
+
+        private CompiledPolicy(Policy policy, int[] matchTypes) {
+            this.policy = policy;
+            this.matchTypes = matchTypes;
+        }
+    }
+}
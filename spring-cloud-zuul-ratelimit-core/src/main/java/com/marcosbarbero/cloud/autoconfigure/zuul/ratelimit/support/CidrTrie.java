@@ -0,0 +1,322 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set of IPv4 and IPv6 addresses and CIDR blocks, looking up an address in as many steps as it has bits.
+ *
+ * <p>Blocks are stored in a binary trie per address family, IPv4-mapped IPv6 addresses being looked up in both.
+ * Blocks include their network and broadcast addresses. Origins that are not an IP address, as host names, only
+ * match the exact same string. Looking up an address does not allocate, so a trie of tens of thousands of blocks
+ * can be checked on every request.</p>
+ */
+public final class CidrTrie {
+
+    private static final ThreadLocal<long[]> IPV6_BUFFER = ThreadLocal.withInitial(() -> new long[4]);
+    private static final int COMPILED_ORIGINS = 256;
+    private static final Map<String, CidrTrie> COMPILED = new LinkedHashMap<String, CidrTrie>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CidrTrie> eldest) {
+            return size() > COMPILED_ORIGINS;
+        }
+    };
+
+    private final Trie ipv4 = new Trie();
+    private final Trie ipv6 = new Trie();
+    private final Set<String> exact = new HashSet<>();
+
+    private CidrTrie(Collection<String> origins) {
+        origins.forEach(this::add);
+        ipv4.trim();
+        ipv6.trim();
+    }
+
+    /**
+     * Compiles the given addresses, CIDR blocks and host names.
+     *
+     * @throws IllegalArgumentException if an origin containing a '/' is not a valid CIDR block
+     */
+    public static CidrTrie of(final Collection<String> origins) {
+        return new CidrTrie(origins);
+    }
+
+    public static CidrTrie of(final String origin) {
+        return new CidrTrie(Collections.singletonList(origin));
+    }
+
+    /**
+     * Returns the compiled trie of the given origin, keeping the most recently used ones so matching the same origin
+     * again does not compile it again.
+     *
+     * @throws IllegalArgumentException if the origin contains a '/' and is not a valid CIDR block
+     */
+    public static CidrTrie compiled(final String origin) {
+        synchronized (COMPILED) {
+            return COMPILED.computeIfAbsent(origin, CidrTrie::of);
+        }
+    }
+
+    /**
+     * Returns whether the given address is one of the origins, or within one of their blocks.
+     */
+    public boolean contains(final String address) {
+        if (address == null) {
+            return false;
+        }
+        if (!exact.isEmpty() && exact.contains(address)) {
+            return true;
+        }
+        long ipv4Address = parseIpv4(address, 0, address.length());
+        if (ipv4Address >= 0) {
+            return ipv4.contains(ipv4Address << 32, 0L, 32);
+        }
+
+        int start = 0;
+        int end = address.length();
+        if (end > 1 && address.charAt(0) == '[' && address.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+        int zone = address.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+        long[] buffer = IPV6_BUFFER.get();
+        if (!parseIpv6(address, start, end, buffer)) {
+            return false;
+        }
+        long high = buffer[0];
+        long low = buffer[1];
+        if (high == 0L && (low >>> 32) == 0xffffL && ipv4.contains(low << 32, 0L, 32)) {
+            return true;
+        }
+        return ipv6.contains(high, low, 128);
+    }
+
+    private void add(String origin) {
+        int slash = origin.indexOf('/');
+        int end = slash < 0 ? origin.length() : slash;
+        long ipv4Address = parseIpv4(origin, 0, end);
+        if (ipv4Address >= 0) {
+            ipv4.insert(ipv4Address << 32, 0L, prefixLength(origin, slash, 32));
+            return;
+        }
+        long[] buffer = new long[4];
+        if (parseIpv6(origin, 0, end, buffer)) {
+            ipv6.insert(buffer[0], buffer[1], prefixLength(origin, slash, 128));
+            return;
+        }
+        if (slash >= 0) {
+            throw new IllegalArgumentException("Could not parse [" + origin + "]");
+        }
+        exact.add(origin);
+    }
+
+    private static int prefixLength(String origin, int slash, int bits) {
+        if (slash < 0) {
+            return bits;
+        }
+        try {
+            int prefixLength = Integer.parseInt(origin.substring(slash + 1));
+            if (prefixLength >= 0 && prefixLength <= bits) {
+                return prefixLength;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Could not parse [" + origin + "]");
+    }
+
+    /**
+     * Returns the dotted quad address between start and end as an unsigned int, or -1 if it is not one.
+     */
+    private static long parseIpv4(String value, int start, int end) {
+        long address = 0L;
+        int dots = 0;
+        int octet = -1;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || ++dots > 3) {
+                    return -1L;
+                }
+                address = address << 8 | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1L;
+                }
+            } else {
+                return -1L;
+            }
+        }
+        if (octet < 0 || dots != 3) {
+            return -1L;
+        }
+        return address << 8 | octet;
+    }
+
+    /**
+     * Parses the IPv6 address between start and end into the high and low bits of the buffer. Groups before a
+     * "::" are accumulated in the first two slots of the buffer and groups after it in the last two.
+     */
+    private static boolean parseIpv6(String value, int start, int end, long[] buffer) {
+        Arrays.fill(buffer, 0L);
+        int groups = 0;
+        int headGroups = -1;
+        int i = start;
+        if (end - start >= 2 && value.charAt(i) == ':' && value.charAt(i + 1) == ':') {
+            headGroups = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int segmentEnd = i;
+            boolean dotted = false;
+            while (segmentEnd < end && value.charAt(segmentEnd) != ':') {
+                dotted |= value.charAt(segmentEnd) == '.';
+                segmentEnd++;
+            }
+            if (segmentEnd == i) {
+                return false;
+            }
+            int slot = headGroups < 0 ? 0 : 2;
+            if (dotted) {
+                long ipv4Address = segmentEnd == end ? parseIpv4(value, i, segmentEnd) : -1L;
+                if (ipv4Address < 0) {
+                    return false;
+                }
+                push(buffer, slot, ipv4Address >>> 16);
+                push(buffer, slot, ipv4Address & 0xffffL);
+                groups += 2;
+            } else {
+                if (segmentEnd - i > 4) {
+                    return false;
+                }
+                long group = 0L;
+                for (int j = i; j < segmentEnd; j++) {
+                    int digit = Character.digit(value.charAt(j), 16);
+                    if (digit < 0) {
+                        return false;
+                    }
+                    group = group << 4 | digit;
+                }
+                push(buffer, slot, group);
+                groups++;
+            }
+            if (groups > 8) {
+                return false;
+            }
+            i = segmentEnd;
+            if (i < end) {
+                i++;
+                if (i < end && value.charAt(i) == ':') {
+                    if (headGroups >= 0) {
+                        return false;
+                    }
+                    headGroups = groups;
+                    i++;
+                } else if (i == end) {
+                    return false;
+                }
+            }
+        }
+        if (headGroups < 0) {
+            return groups == 8;
+        }
+        if (groups == 8) {
+            return false;
+        }
+        for (int shift = headGroups; shift < 8; shift++) {
+            push(buffer, 0, 0L);
+        }
+        buffer[0] |= buffer[2];
+        buffer[1] |= buffer[3];
+        return true;
+    }
+
+    private static void push(long[] buffer, int slot, long group) {
+        buffer[slot] = buffer[slot] << 16 | buffer[slot + 1] >>> 48;
+        buffer[slot + 1] = buffer[slot + 1] << 16 | group;
+    }
+
+    /**
+     * Binary trie of address prefixes, node i having its children at 2i and 2i + 1 of the children array. The root
+     * is node 0, so 0 also stands for a missing child.
+     */
+    private static final class Trie {
+
+        private int[] children = new int[2];
+        private boolean[] terminal = new boolean[1];
+        private int size = 1;
+
+        private void insert(long high, long low, int prefixLength) {
+            int node = 0;
+            for (int i = 0; i < prefixLength; i++) {
+                if (terminal[node]) {
+                    return;
+                }
+                int index = 2 * node + bit(high, low, i);
+                if (children[index] == 0) {
+                    int child = newNode();
+                    children[index] = child;
+                }
+                node = children[index];
+            }
+            terminal[node] = true;
+        }
+
+        private boolean contains(long high, long low, int bits) {
+            int node = 0;
+            for (int i = 0; !terminal[node]; i++) {
+                if (i == bits) {
+                    return false;
+                }
+                node = children[2 * node + bit(high, low, i)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int newNode() {
+            if (size == terminal.length) {
+                terminal = Arrays.copyOf(terminal, size * 2);
+                children = Arrays.copyOf(children, size * 4);
+            }
+            return size++;
+        }
+
+        private void trim() {
+            terminal = Arrays.copyOf(terminal, size);
+            children = Arrays.copyOf(children, size * 2);
+        }
+
+        private static int bit(long high, long low, int i) {
+            return (int) ((i < 64 ? high >>> (63 - i) : low >>> (127 - i)) & 1L);
+        }
+    }
+}
@@ -20,21 +20,28 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyG
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.cloud.netflix.zuul.filters.Route;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.StringJoiner;
+import java.util.List;
 
 /**
  * Default KeyGenerator implementation.
  *
+ * <p>Keys are built in a builder reused by every request of the same thread, so the key itself is the only string
+ * allocated.</p>
+ *
  * @author roxspring (github user)
  * @author Marcos Barbero
  * @author Liel Chayoun
  */
 public class DefaultRateLimitKeyGenerator implements RateLimitKeyGenerator {
 
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
     private final RateLimitProperties properties;
     private final RateLimitUtils rateLimitUtils;
 
@@ -45,17 +52,33 @@ public class DefaultRateLimitKeyGenerator implements RateLimitKeyGenerator {
 
     @Override
     public String key(final HttpServletRequest request, final Route route, final Policy policy) {
-        final StringJoiner joiner = new StringJoiner(":");
-        joiner.add(properties.getKeyPrefix());
+        StringBuilder builder = BUILDER.get();
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            builder = new StringBuilder(128);
+            BUILDER.set(builder);
+        }
+        builder.setLength(0);
+        builder.append(properties.getKeyPrefix());
         if (route != null) {
-            joiner.add(route.getId());
+            builder.append(':').append(route.getId());
+        }
+        List<MatchType> types = policy.getType();
+        for (int i = 0; i < types.size(); i++) {
+            append(builder, types.get(i), request, route);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the same part as {@link MatchType#key}, without concatenating it first.
+     */
+    private void append(StringBuilder builder, MatchType matchType, HttpServletRequest request, Route route) {
+        String matcher = matchType.getMatcher();
+        String key = matchType.getType().key(request, route, rateLimitUtils, matcher);
+        if (StringUtils.isNotEmpty(matcher)) {
+            builder.append(':').append(key).append(':').append(matcher);
+        } else if (key == null || !key.isEmpty()) {
+            builder.append(':').append(key);
         }
-        policy.getType().forEach(matchType -> {
-            String key = matchType.key(request, route, rateLimitUtils);
-            if (StringUtils.isNotEmpty(key)) {
-                joiner.add(key);
-            }
-        });
-        return joiner.toString();
     }
 }
@@ -33,7 +33,7 @@ public class DefaultRateLimitUtils implements RateLimitUtils {
     public String getAnonymousUser(){
         return ANONYMOUS_USER;
     }
-    private static final String X_FORWARDED_FOR_HEADER_DELIMITER = ",";
+    private static final char X_FORWARDED_FOR_HEADER_DELIMITER = ',';
 
     private final RateLimitProperties properties;
 
@@ -50,7 +50,8 @@ public class DefaultRateLimitUtils implements RateLimitUtils {
     public String getRemoteAddress(final HttpServletRequest request) {
         String xForwardedFor = request.getHeader(X_FORWARDED_FOR_HEADER);
         if (properties.isBehindProxy() && xForwardedFor != null) {
-            return xForwardedFor.split(X_FORWARDED_FOR_HEADER_DELIMITER)[0].trim();
+            int delimiter = xForwardedFor.indexOf(X_FORWARDED_FOR_HEADER_DELIMITER);
+            return (delimiter < 0 ? xForwardedFor : xForwardedFor.substring(0, delimiter)).trim();
         }
         return request.getRemoteAddr();
     }
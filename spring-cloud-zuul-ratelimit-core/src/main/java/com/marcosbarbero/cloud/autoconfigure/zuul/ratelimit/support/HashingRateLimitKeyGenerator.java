@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+/**
+ * KeyGenerator replacing the keys of another one with a fixed width hash.
+ *
+ * <p>Keys are the key prefix followed by the first 128 bits of the SHA-256 hash of the generated key, encoded as 22
+ * URL safe Base64 characters, so the size of the stored keys does not depend on the length of paths or header values.
+ * With a reverse lookup size above 0, the most recently generated keys are kept to resolve hashed keys back to the
+ * generated ones while debugging.</p>
+ */
+public class HashingRateLimitKeyGenerator implements RateLimitKeyGenerator {
+
+    private static final int HASH_BYTES = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final RateLimitKeyGenerator delegate;
+    private final String keyPrefix;
+    private final Cache<String, String> generatedKeys;
+
+    public HashingRateLimitKeyGenerator(final RateLimitKeyGenerator delegate, final String keyPrefix) {
+        this(delegate, keyPrefix, 0);
+    }
+
+    public HashingRateLimitKeyGenerator(final RateLimitKeyGenerator delegate, final String keyPrefix,
+                                        final int reverseLookupSize) {
+        this.delegate = delegate;
+        this.keyPrefix = keyPrefix;
+        this.generatedKeys = reverseLookupSize > 0
+                ? CacheBuilder.newBuilder().maximumSize(reverseLookupSize).build() : null;
+    }
+
+    @Override
+    public String key(final HttpServletRequest request, final Route route, final Policy policy) {
+        String key = delegate.key(request, route, policy);
+        byte[] hash = new byte[HASH_BYTES];
+        Hashing.sha256().hashString(key, StandardCharsets.UTF_8).writeBytesTo(hash, 0, HASH_BYTES);
+        String hashedKey = keyPrefix + ":" + ENCODER.encodeToString(hash);
+        if (generatedKeys != null) {
+            generatedKeys.put(hashedKey, key);
+        }
+        return hashedKey;
+    }
+
+    /**
+     * Returns the generated key a hashed key was computed from.
+     *
+     * @param hashedKey The hashed key
+     * @return the generated key, or null if reverse lookup is disabled or the key is no longer known
+     */
+    public String getGeneratedKey(final String hashedKey) {
+        return generatedKeys != null ? generatedKeys.getIfPresent(hashedKey) : null;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.KeyHashing;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+/**
+ * Wraps every {@link RateLimitKeyGenerator} bean, the default one as well as custom ones, in a
+ * {@link HashingRateLimitKeyGenerator} when key hashing is enabled.
+ */
+public class HashingRateLimitKeyGeneratorPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<RateLimitProperties> properties;
+
+    public HashingRateLimitKeyGeneratorPostProcessor(final ObjectProvider<RateLimitProperties> properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (!(bean instanceof RateLimitKeyGenerator) || bean instanceof HashingRateLimitKeyGenerator) {
+            return bean;
+        }
+        RateLimitProperties rateLimitProperties = properties.getObject();
+        KeyHashing keyHashing = rateLimitProperties.getKeyHashing();
+        if (!keyHashing.isEnabled()) {
+            return bean;
+        }
+        return new HashingRateLimitKeyGenerator((RateLimitKeyGenerator) bean, rateLimitProperties.getKeyPrefix(),
+                keyHashing.getReverseLookupSize());
+    }
+}
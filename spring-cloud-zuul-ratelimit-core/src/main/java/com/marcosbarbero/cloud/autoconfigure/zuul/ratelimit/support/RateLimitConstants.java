@@ -37,6 +37,8 @@ public final class RateLimitConstants {
     public static final String REQUEST_START_TIME = "rateLimitRequestStartTime";
     public static final String CURRENT_REQUEST_ROUTE = "rateLimitRequestRoute";
     public static final String CURRENT_REQUEST_POLICY = "rateLimitRequestPolicy";
+    public static final String CURRENT_REQUEST_KEYS = "rateLimitRequestKeys";
+    public static final String CURRENT_REQUEST_ATTRIBUTES = "rateLimitRequestAttributes";
     public static final String RATE_LIMIT_EXCEEDED = "rateLimitExceeded";
     public static final String ALREADY_LIMITED = "rateLimitAlreadyDone";
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_ATTRIBUTES;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.netflix.zuul.context.RequestContext;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Request attributes used by policy matchers and key generation, each resolved at most once per request.
+ *
+ * <p>The attributes are kept in the current {@link RequestContext}, so the deny list, the matchers, the key
+ * generator and both filters share them instead of splitting the forwarded addresses or reading the security
+ * context again.</p>
+ */
+public final class ResolvedRequest {
+
+    private final HttpServletRequest request;
+    private final RateLimitUtils rateLimitUtils;
+    private String remoteAddress;
+    private String user;
+    private Set<String> userRoles;
+    private String method;
+    private String path;
+
+    private ResolvedRequest(HttpServletRequest request, RateLimitUtils rateLimitUtils) {
+        this.request = request;
+        this.rateLimitUtils = rateLimitUtils;
+    }
+
+    /**
+     * Returns the attributes of the given request, resolved earlier in the current request context if any.
+     */
+    public static ResolvedRequest of(final HttpServletRequest request, final RateLimitUtils rateLimitUtils) {
+        RequestContext context = RequestContext.getCurrentContext();
+        Object current = context.get(CURRENT_REQUEST_ATTRIBUTES);
+        if (current instanceof ResolvedRequest) {
+            ResolvedRequest resolved = (ResolvedRequest) current;
+            if (resolved.request == request && resolved.rateLimitUtils == rateLimitUtils) {
+                return resolved;
+            }
+        }
+        ResolvedRequest resolved = new ResolvedRequest(request, rateLimitUtils);
+        context.put(CURRENT_REQUEST_ATTRIBUTES, resolved);
+        return resolved;
+    }
+
+    public String getRemoteAddress() {
+        if (remoteAddress == null) {
+            remoteAddress = rateLimitUtils.getRemoteAddress(request);
+        }
+        return remoteAddress;
+    }
+
+    public String getUser() {
+        if (user == null) {
+            user = rateLimitUtils.getUser(request);
+        }
+        return user;
+    }
+
+    public Set<String> getUserRoles() {
+        if (userRoles == null) {
+            userRoles = rateLimitUtils.getUserRoles();
+        }
+        return userRoles;
+    }
+
+    public String getMethod() {
+        if (method == null) {
+            method = request.getMethod();
+        }
+        return method;
+    }
+
+    public String getPath() {
+        if (path == null) {
+            path = request.getRequestURI();
+        }
+        return path;
+    }
+}
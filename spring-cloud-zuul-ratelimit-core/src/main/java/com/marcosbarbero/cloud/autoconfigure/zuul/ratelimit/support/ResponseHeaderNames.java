@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Names of the rate limit response headers, indexed by {@link #LIMIT}, {@link #REMAINING}, {@link #QUOTA},
+ * {@link #REMAINING_QUOTA} and {@link #RESET}.
+ *
+ * <p>Verbose names end with the rate key, any character but letters, digits, '-' and '.' replaced by '_'. They are
+ * built without regular expressions and cached for the most recently used keys.</p>
+ */
+public final class ResponseHeaderNames {
+
+    public static final int LIMIT = 0;
+    public static final int REMAINING = 1;
+    public static final int QUOTA = 2;
+    public static final int REMAINING_QUOTA = 3;
+    public static final int RESET = 4;
+
+    private static final String[] STANDARD = {HEADER_LIMIT, HEADER_REMAINING, HEADER_QUOTA, HEADER_REMAINING_QUOTA,
+        HEADER_RESET};
+
+    private final Cache<String, String[]> verbose;
+
+    public ResponseHeaderNames(final long cacheSize) {
+        this.verbose = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Returns the header names shared by every rate key. The array must not be modified.
+     */
+    public String[] standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Returns the header names of the given rate key. The array must not be modified.
+     */
+    public String[] verbose(final String key) {
+        String[] names = verbose.getIfPresent(key);
+        if (names == null) {
+            String suffix = "-" + sanitize(key);
+            names = new String[STANDARD.length];
+            for (int i = 0; i < STANDARD.length; i++) {
+                names[i] = STANDARD[i] + suffix;
+            }
+            verbose.put(key, names);
+        }
+        return names;
+    }
+
+    /**
+     * Same as {@code key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_")} in a single pass, returning the key
+     * itself when nothing is replaced.
+     */
+    static String sanitize(String key) {
+        StringBuilder builder = null;
+        int length = key.length();
+        for (int i = 0; i < length; i++) {
+            if (Character.isSurrogate(key.charAt(i))) {
+                // regular expressions replace a supplementary character as a whole
+                return key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_");
+            }
+            char c = sanitize(key.charAt(i));
+            if (c == '_' && i + 1 < length && sanitize(key.charAt(i + 1)) == '_'
+                && !Character.isSurrogate(key.charAt(i + 1))) {
+                // a pair of underscores is replaced by one, pairs do not overlap
+                if (builder == null) {
+                    builder = new StringBuilder(length).append(key, 0, i);
+                }
+                builder.append('_');
+                i++;
+            } else if (builder != null) {
+                builder.append(c);
+            } else if (c != key.charAt(i)) {
+                builder = new StringBuilder(length).append(key, 0, i).append(c);
+            }
+        }
+        return builder != null ? builder.toString() : key;
+    }
+
+    private static char sanitize(char c) {
+        boolean allowed = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+            || c == '-' || c == '.';
+        return allowed ? c : '_';
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Ant-style URL patterns of a route, matched case insensitively against a request URI.
+ *
+ * <p>Patterns are parsed once by an {@link AntPathMatcher} of their own, caching only the patterns of the route.
+ * Matching a single pattern with {@link #matches(String, String)} caches nothing. Patterns are grouped by their first
+ * path segment when it is a literal, so a request only checks the patterns starting with its own first segment and
+ * those starting with a wildcard, however many patterns the route has.</p>
+ */
+public final class UrlPatterns {
+
+    private static final AntPathMatcher MATCHER = matcher(false);
+    private static final int[] NONE = new int[0];
+
+    private final AntPathMatcher matcher = matcher(true);
+    private final String[] patterns;
+    private final Map<String, int[]> literalCandidates;
+    private final int[] wildcardCandidates;
+
+    private UrlPatterns(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[0]);
+        Map<String, List<Integer>> literals = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<Integer> wildcards = new ArrayList<>();
+        for (int i = 0; i < this.patterns.length; i++) {
+            String segment = firstSegment(this.patterns[i]);
+            if (segment == null || isWildcard(segment)) {
+                wildcards.add(i);
+            } else {
+                literals.computeIfAbsent(segment, key -> new ArrayList<>()).add(i);
+            }
+        }
+        this.literalCandidates = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        literals.forEach((segment, indexes) -> literalCandidates.put(segment, toArray(indexes)));
+        this.wildcardCandidates = toArray(wildcards);
+    }
+
+    public static UrlPatterns of(final List<String> patterns) {
+        return new UrlPatterns(patterns);
+    }
+
+    /**
+     * Returns whether the path matches the pattern, ignoring case.
+     */
+    public static boolean matches(final String pattern, final String path) {
+        return path != null && MATCHER.match(pattern, path);
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Matches the path against every pattern, setting whether it matches the pattern at index i at index i of the
+     * given array.
+     */
+    public void match(final String path, final boolean[] matches) {
+        Arrays.fill(matches, 0, patterns.length, false);
+        if (path == null) {
+            return;
+        }
+        for (int index : wildcardCandidates) {
+            matches[index] = matcher.match(patterns[index], path);
+        }
+        String segment = firstSegment(path);
+        if (segment != null) {
+            for (int index : literalCandidates.getOrDefault(segment, NONE)) {
+                matches[index] = matcher.match(patterns[index], path);
+            }
+        }
+    }
+
+    private static AntPathMatcher matcher(boolean cachePatterns) {
+        AntPathMatcher matcher = new AntPathMatcher();
+        matcher.setCaseSensitive(false);
+        matcher.setCachePatterns(cachePatterns);
+        return matcher;
+    }
+
+    private static String firstSegment(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start == path.length()) {
+            return null;
+        }
+        int end = path.indexOf('/', start);
+        return path.substring(start, end < 0 ? path.length() : end);
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0;
+    }
+
+    private static int[] toArray(List<Integer> indexes) {
+        return indexes.isEmpty() ? NONE : indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Bounded queue of quota consumed by the post filter, sent to the {@link RateLimiter} in the background.
+ *
+ * <p>Every flush drains the queue and sums the request time queued for the same key, so the repository receives a
+ * single update per key and interval. Updates offered while the queue is full are dropped and counted.</p>
+ */
+public class WriteBehindQuotaQueue implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQuotaQueue.class);
+
+    private final RateLimiter rateLimiter;
+    private final BlockingQueue<Update> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final ScheduledExecutorService flushExecutor;
+
+    public WriteBehindQuotaQueue(final RateLimiter rateLimiter, final int capacity, final Duration flushInterval) {
+        this.rateLimiter = rateLimiter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        this.flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Queues the request time consumed from the quota of a key.
+     *
+     * @return false if the queue is full and the update was dropped
+     */
+    public boolean offer(final Policy policy, final String key, final long requestTime) {
+        if (queue.offer(new Update(policy, key, requestTime))) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Number of updates waiting for the next flush.
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Number of updates dropped because the queue was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        flushExecutor.shutdown();
+        flushExecutor.awaitTermination(1, SECONDS);
+        flush();
+    }
+
+    void flush() {
+        List<Update> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        if (drained.isEmpty()) {
+            return;
+        }
+        Map<String, Update> coalesced = new LinkedHashMap<>();
+        for (Update update : drained) {
+            coalesced.merge(update.key, update,
+                    (previous, next) -> new Update(previous.policy, previous.key, previous.requestTime + next.requestTime));
+        }
+        for (Update update : coalesced.values()) {
+            try {
+                rateLimiter.consume(update.policy, update.key, update.requestTime);
+            } catch (RuntimeException e) {
+                log.warn("Failed consuming quota for " + update.key, e);
+            }
+        }
+    }
+
+    private static final class Update {
+
+        private final Policy policy;
+        private final String key;
+        private final long requestTime;
+
+        private Update(Policy policy, String key, long requestTime) {
+            this.policy = policy;
+            this.key = key;
+            this.requestTime = requestTime;
+        }
+    }
+}
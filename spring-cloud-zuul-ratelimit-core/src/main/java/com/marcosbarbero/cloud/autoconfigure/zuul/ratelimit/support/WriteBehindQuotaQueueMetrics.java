@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the depth of a {@link WriteBehindQuotaQueue} and the number of updates it dropped.
+ */
+public class WriteBehindQuotaQueueMetrics implements MeterBinder {
+
+    public static final String QUEUE_SIZE = "zuul.ratelimit.write-behind.queue";
+    public static final String DROPPED = "zuul.ratelimit.write-behind.dropped";
+
+    private final WriteBehindQuotaQueue queue;
+
+    public WriteBehindQuotaQueueMetrics(final WriteBehindQuotaQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Gauge.builder(QUEUE_SIZE, queue, WriteBehindQuotaQueue::size)
+                .description("Quota updates waiting to be sent to the repository")
+                .register(registry);
+        FunctionCounter.builder(DROPPED, queue, WriteBehindQuotaQueue::getDropped)
+                .description("Quota updates dropped because the queue was full")
+                .register(registry);
+    }
+}
@@ -1,5 +1,5 @@
--- key, arg: usage, refill_per_msec, capacity, current_seconds
---return: remain, prev_timestamp
+-- key, arg: usage, refill_per_msec, capacity[, current_seconds]
+--return: remain, prev_timestamp, current_seconds
 -- Attention! Require lua > 5.3
 
 local timestamp_key = KEYS[1] .. "_timestamp"
@@ -7,12 +7,24 @@ local token_key = KEYS[1] .. "_bucket"
 local usage = tonumber(ARGV[1])
 local refill_per_msec = tonumber(ARGV[2])
 local capacity = tonumber(ARGV[3])
-local current_seconds = tonumber(ARGV[4])
+
+-- TIME is not deterministic, replicate the effects of the script instead of the script itself. Redis before 3.2
+-- replicates scripts as a whole, the caller then passes the current time
+local current_seconds
+if redis.replicate_commands then
+  redis.replicate_commands()
+  current_seconds = tonumber(redis.call("time")[1])
+elseif ARGV[4] then
+  current_seconds = tonumber(ARGV[4])
+else
+  return redis.error_reply("NOTIME scripts cannot read the time, pass the current time")
+end
 local ttl = math.floor(capacity * 1000 / refill_per_msec) * 2
 
 
 local values = redis.call("mget", timestamp_key, token_key)
 local ret = {}
+ret[3] = current_seconds
 if values[1] == false or values[2] == false then
   local remain = capacity - usage
   redis.call("setex", timestamp_key, ttl, current_seconds)
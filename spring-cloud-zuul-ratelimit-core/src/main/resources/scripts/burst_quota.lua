@@ -0,0 +1,76 @@
+-- keys: limit key, quota key
+-- arg: usage, refill_per_msec, capacity, quota_usage, quota_ttl[, current_seconds]
+--return: remain, prev_timestamp, current_seconds, quota_current
+-- Attention! Require lua > 5.3
+
+local function burst(key, usage, refill_per_msec, capacity, current_seconds)
+  local timestamp_key = key .. "_timestamp"
+  local token_key = key .. "_bucket"
+  local ttl = math.floor(capacity * 1000 / refill_per_msec) * 2
+
+  local values = redis.call("mget", timestamp_key, token_key)
+  if values[1] == false or values[2] == false then
+    local remain = capacity - usage
+    redis.call("setex", timestamp_key, ttl, current_seconds)
+    redis.call("setex", token_key, ttl, remain)
+    return remain, current_seconds
+  end
+
+  --bucket exists
+  local prev_timestamp = tonumber(values[1])
+  local remain = tonumber(values[2])
+
+  local refill_num = 0
+  if current_seconds > prev_timestamp then
+    refill_num = math.floor((current_seconds - prev_timestamp) * refill_per_msec / 1000)
+  end
+
+  if refill_num + remain > capacity then
+    refill_num = capacity - remain
+  end
+
+  --refill bucket
+  if refill_num > 0 then
+    redis.call("setex", timestamp_key, ttl, current_seconds)
+    prev_timestamp = current_seconds
+    remain = redis.call("incrby", token_key, refill_num)
+    redis.call("expire", token_key, ttl)
+  end
+
+  if remain < usage then
+    return -1, prev_timestamp
+  end
+
+  --consumer token
+  remain = redis.call("decrby", token_key, usage)
+  redis.call("expire", token_key, ttl)
+  return remain, prev_timestamp
+end
+
+local function quota(key, usage, ttl)
+  local current = redis.call("incrby", key, usage)
+  if tonumber(current) == usage then
+    redis.call("expire", key, ttl)
+  end
+  return current
+end
+
+-- TIME is not deterministic, replicate the effects of the script instead of the script itself. Redis before 3.2
+-- replicates scripts as a whole, the caller then passes the current time
+local current_seconds
+if redis.replicate_commands then
+  redis.replicate_commands()
+  current_seconds = tonumber(redis.call("time")[1])
+elseif ARGV[6] then
+  current_seconds = tonumber(ARGV[6])
+else
+  return redis.error_reply("NOTIME scripts cannot read the time, pass the current time")
+end
+local remain, prev_timestamp = burst(KEYS[1], tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3]), current_seconds)
+
+local ret = {}
+ret[1] = remain
+ret[2] = prev_timestamp
+ret[3] = current_seconds
+ret[4] = quota(KEYS[2], tonumber(ARGV[4]), ARGV[5])
+return ret
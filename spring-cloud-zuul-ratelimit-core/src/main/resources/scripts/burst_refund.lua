@@ -0,0 +1,18 @@
+-- key, arg: usage, capacity
+--return: remain, -1 when the bucket expired in the meantime
+
+local token_key = KEYS[1] .. "_bucket"
+local usage = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+
+if redis.call("exists", token_key) == 0 then
+  return -1
+end
+
+--give the tokens back, without exceeding the capacity the bucket may have been refilled to meanwhile
+local remain = redis.call("incrby", token_key, usage)
+if remain > capacity then
+  remain = redis.call("decrby", token_key, remain - capacity)
+end
+
+return remain
@@ -0,0 +1,72 @@
+-- key, arg: usage, refill_per_msec, capacity[, current_seconds]
+--return: remain, prev_timestamp, current_seconds, shortfall
+-- Consumes as many of the used tokens as the bucket holds, the shortfall being the usage that could not be consumed
+-- Attention! Require lua > 5.3
+
+local timestamp_key = KEYS[1] .. "_timestamp"
+local token_key = KEYS[1] .. "_bucket"
+local usage = tonumber(ARGV[1])
+local refill_per_msec = tonumber(ARGV[2])
+local capacity = tonumber(ARGV[3])
+
+-- TIME is not deterministic, replicate the effects of the script instead of the script itself. Redis before 3.2
+-- replicates scripts as a whole, the caller then passes the current time
+local current_seconds
+if redis.replicate_commands then
+  redis.replicate_commands()
+  current_seconds = tonumber(redis.call("time")[1])
+elseif ARGV[4] then
+  current_seconds = tonumber(ARGV[4])
+else
+  return redis.error_reply("NOTIME scripts cannot read the time, pass the current time")
+end
+local ttl = math.floor(capacity * 1000 / refill_per_msec) * 2
+
+
+local values = redis.call("mget", timestamp_key, token_key)
+local ret = {}
+ret[3] = current_seconds
+if values[1] == false or values[2] == false then
+  local consumed = math.min(usage, capacity)
+  local remain = capacity - consumed
+  redis.call("setex", timestamp_key, ttl, current_seconds)
+  redis.call("setex", token_key, ttl, remain)
+  ret[1] = remain
+  ret[2] = current_seconds
+  ret[4] = usage - consumed
+  return ret
+end
+
+--bucket exists
+local prev_timestamp = tonumber(values[1])
+ret[2] = prev_timestamp
+local remain = tonumber(values[2])
+
+local refill_num = 0
+if current_seconds > prev_timestamp then
+  refill_num = math.floor((current_seconds - prev_timestamp) * refill_per_msec / 1000)
+end
+
+
+if refill_num + remain > capacity then
+  refill_num = capacity - remain
+end
+
+--refill bucket
+if refill_num > 0 then
+  redis.call("setex", timestamp_key, ttl, current_seconds)
+  ret[2] = current_seconds
+  remain = redis.call("incrby", token_key, refill_num)
+  redis.call("expire", token_key, ttl)
+end
+
+--consume what the bucket holds
+local consumed = math.max(0, math.min(usage, remain))
+if consumed > 0 then
+  remain = redis.call("decrby", token_key, consumed)
+  redis.call("expire", token_key, ttl)
+end
+
+ret[1] = remain
+ret[4] = usage - consumed
+return ret
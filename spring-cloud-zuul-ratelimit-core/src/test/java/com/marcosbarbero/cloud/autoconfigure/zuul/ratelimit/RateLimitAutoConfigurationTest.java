@@ -3,6 +3,7 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.PREFIX;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
 
 import com.ecwid.consul.v1.ConsulClient;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -12,7 +13,12 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtil
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.AggregatingConsulRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ConsulRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.NearCacheRedisRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.OffHeapRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ReactiveRedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jHazelcastRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jIgniteRateLimiter;
@@ -20,6 +26,9 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bu
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jJCacheRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.StringToMatchTypeConverter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.HashingRateLimitKeyGenerator;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueue;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueueMetrics;
 import com.netflix.zuul.ZuulFilter;
 import io.github.bucket4j.grid.GridBucketState;
 import java.util.List;
@@ -34,6 +43,7 @@ import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 
 /**
@@ -75,12 +85,59 @@ public class RateLimitAutoConfigurationTest {
                         assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(ConsulRateLimiter.class));
     }
 
+    @Test
+    public void testAggregatingConsulRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=CONSUL", "spring.cloud.consul.enabled=true",
+                PREFIX + ".consul.aggregation.enabled=true")
+                .run(context -> assertThat(context).getBean(RateLimiter.class)
+                        .isExactlyInstanceOf(AggregatingConsulRateLimiter.class));
+    }
+
     @Test
     public void testRedisRateLimiterByProperty() {
         contextRunner.withPropertyValues(PREFIX + ".repository=REDIS")
                 .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(RedisRateLimiter.class));
     }
 
+    @Test
+    public void testReactiveRedisRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=REDIS", PREFIX + ".redis.reactive.enabled=true")
+                .withAllowBeanDefinitionOverriding(true)
+                .withBean("redisConnectionFactory", RedisConnectionFactory.class, () -> mock(RedisConnectionFactory.class,
+                        withSettings().extraInterfaces(ReactiveRedisConnectionFactory.class)))
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(ReactiveRedisRateLimiter.class));
+    }
+
+    @Test
+    public void testRedisRateLimiterWithReactiveConnectionFactoryByDefault() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=REDIS")
+                .withAllowBeanDefinitionOverriding(true)
+                .withBean("redisConnectionFactory", RedisConnectionFactory.class, () -> mock(RedisConnectionFactory.class,
+                        withSettings().extraInterfaces(ReactiveRedisConnectionFactory.class)))
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(RedisRateLimiter.class));
+    }
+
+    @Test
+    public void testNearCacheRedisRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=REDIS", PREFIX + ".redis.near-cache.enabled=true")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(NearCacheRedisRateLimiter.class));
+    }
+
+    @Test
+    public void testWriteBehindQuotaQueueByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".write-behind.enabled=true")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(WriteBehindQuotaQueue.class);
+                    assertThat(context).hasSingleBean(WriteBehindQuotaQueueMetrics.class);
+                });
+    }
+
+    @Test
+    public void testNoWriteBehindQuotaQueueByDefault() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY")
+                .run(context -> assertThat(context).doesNotHaveBean(WriteBehindQuotaQueue.class));
+    }
+
     @Test
     public void testBucket4jJCacheRateLimiterByProperty() {
         contextRunner.withPropertyValues(PREFIX + ".repository=BUCKET4J_JCACHE")
@@ -105,12 +162,44 @@ public class RateLimitAutoConfigurationTest {
                 .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(Bucket4jInfinispanRateLimiter.class));
     }
 
+    @Test
+    public void testInMemoryRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(InMemoryRateLimiter.class));
+    }
+
+    @Test
+    public void testOffHeapRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=OFF_HEAP", PREFIX + ".off-heap.capacity=1024")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(OffHeapRateLimiter.class));
+    }
+
     @Test
     public void testDefaultRateLimitKeyGenerator() {
         contextRunner.withPropertyValues(PREFIX + ".repository=BUCKET4J_JCACHE")
                 .run(context -> assertThat(context).getBean(RateLimitKeyGenerator.class).isExactlyInstanceOf(DefaultRateLimitKeyGenerator.class));
     }
 
+    @Test
+    public void testHashingRateLimitKeyGeneratorByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".key-hashing.enabled=true")
+                .run(context -> assertThat(context).getBean(RateLimitKeyGenerator.class).isExactlyInstanceOf(HashingRateLimitKeyGenerator.class));
+    }
+
+    @Test
+    public void testHashingCustomRateLimitKeyGeneratorByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".key-hashing.enabled=true",
+                PREFIX + ".key-hashing.reverse-lookup-size=1")
+                .withBean(RateLimitKeyGenerator.class, () -> (request, route, policy) -> "custom")
+                .run(context -> {
+                    assertThat(context).getBean(RateLimitKeyGenerator.class).isExactlyInstanceOf(HashingRateLimitKeyGenerator.class);
+                    HashingRateLimitKeyGenerator keyGenerator = context.getBean(HashingRateLimitKeyGenerator.class);
+                    String key = keyGenerator.key(null, null, null);
+                    assertThat(key).startsWith("rate-limit-application:");
+                    assertThat(keyGenerator.getGeneratedKey(key)).isEqualTo("custom");
+                });
+    }
+
     @Test
     public void testPolicyAdjuster() {
         contextRunner.withPropertyValues(PREFIX + ".repository=BUCKET4J_JCACHE",
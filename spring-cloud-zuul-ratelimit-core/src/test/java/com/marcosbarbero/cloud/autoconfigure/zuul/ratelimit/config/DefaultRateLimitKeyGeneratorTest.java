@@ -195,4 +195,15 @@ public class DefaultRateLimitKeyGeneratorTest {
         String key = target.key(httpServletRequest, route, policy);
         assertThat(key).isEqualTo("key-prefix:id:customValue:customHeader");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKeyReusedBuilder() {
+        Policy policy = new Policy();
+        policy.getType().add(new MatchType(RateLimitType.HTTP_METHOD, null));
+        policy.getType().add(new MatchType(RateLimitType.URL, null));
+        when(httpServletRequest.getMethod()).thenReturn("GET");
+
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo("key-prefix:id:GET:/**");
+        assertThat(target.key(httpServletRequest, null, policy)).isEqualTo("key-prefix:GET");
+    }
+}
@@ -1,14 +1,26 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -23,18 +35,11 @@ public class AbstractRateLimiterTest {
     private RateLimiterErrorHandler rateLimiterErrorHandler;
 
     @BeforeEach
-    public void setUp() throws Exception {
+    public void setUp() {
         MockitoAnnotations.initMocks(this);
-        target = Mockito.mock(AbstractRateLimiter.class, Mockito.CALLS_REAL_METHODS);
-        Field rateLimiterErrorHandler = AbstractRateLimiter.class.getDeclaredField("rateLimiterErrorHandler");
-        boolean accessible = rateLimiterErrorHandler.isAccessible();
-        rateLimiterErrorHandler.setAccessible(true);
-        Field modifiersField = Field.class.getDeclaredField("modifiers");
-        modifiersField.setAccessible(true);
-        modifiersField.setInt(rateLimiterErrorHandler, rateLimiterErrorHandler.getModifiers() & ~Modifier.FINAL);
-        rateLimiterErrorHandler.set(target, this.rateLimiterErrorHandler);
-        rateLimiterErrorHandler.setAccessible(accessible);
-        modifiersField.setInt(rateLimiterErrorHandler, rateLimiterErrorHandler.getModifiers() & Modifier.FINAL);
+        target = Mockito.mock(AbstractRateLimiter.class, withSettings()
+            .useConstructor(rateLimiterErrorHandler)
+            .defaultAnswer(Mockito.CALLS_REAL_METHODS));
     }
 
     @Test
@@ -54,4 +59,74 @@ public class AbstractRateLimiterTest {
         target.consume(policy, "key", 0L);
         verify(rateLimiterErrorHandler).handleSaveError(matches("key"), any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsumeDifferentKeysDoNotBlockEachOther() throws Exception {
+        CountDownLatch blockedKeyFetched = new CountDownLatch(1);
+        CountDownLatch releaseBlockedKey = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            blockedKeyFetched.countDown();
+            releaseBlockedKey.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(target).getRate(eq("blocked"));
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Rate> blocked = executor.submit(() -> target.consume(policy, "blocked", null));
+            assertThat(blockedKeyFetched.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Rate rate = target.consume(policy, "free", null);
+            assertThat(rate.getRemaining()).isEqualTo(99L);
+            assertThat(blocked.isDone()).isFalse();
+
+            releaseBlockedKey.countDown();
+            assertThat(blocked.get(5, TimeUnit.SECONDS).getRemaining()).isEqualTo(99L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConsumeSameKeyUnderParallelLoad() throws Exception {
+        Map<String, Rate> repository = new ConcurrentHashMap<>();
+        when(target.getRate(anyString())).thenAnswer(invocation -> {
+            Rate rate = repository.get(invocation.<String>getArgument(0));
+            return rate == null ? null
+                : new Rate(rate.getKey(), rate.getRemaining(), rate.getRemainingQuota(), rate.getReset(),
+                    rate.getExpiration(), rate.getCapacity());
+        });
+        doAnswer(invocation -> {
+            Rate rate = invocation.getArgument(0);
+            repository.put(rate.getKey(), rate);
+            return null;
+        }).when(target).saveRate(any());
+        Policy policy = new Policy();
+        policy.setLimit(10_000L);
+        policy.setRefreshInterval(Duration.ofMinutes(5));
+
+        int threads = 8;
+        int requestsPerThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        target.consume(policy, "key", null);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(repository.get("key").getRemaining()).isEqualTo(10_000L - threads * requestsPerThread);
+    }
+}
@@ -0,0 +1,190 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetBinaryValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import com.google.common.collect.Maps;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AggregatingConsulRateLimiterTest extends BaseRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private ConsulClient consulClient;
+
+    private final BinaryRateCodec rateCodec = new BinaryRateCodec();
+    private final Map<String, byte[]> repository = Maps.newHashMap();
+    private final Map<String, Long> modifyIndexes = Maps.newHashMap();
+
+    private AggregatingConsulRateLimiter aggregatingTarget;
+    private Runnable onWrite = () -> { };
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(consulClient.setKVBinaryValue(any(), any(), any(PutParams.class))).thenAnswer(this::setKVBinaryValue);
+        when(consulClient.getKVBinaryValue(any())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            byte[] value = repository.get(key);
+            if (value == null) {
+                return new Response<>(null, 1L, true, 1L);
+            }
+            GetBinaryValue getValue = new GetBinaryValue();
+            getValue.setValue(value);
+            getValue.setModifyIndex(modifyIndexes.get(key));
+            return new Response<>(getValue, 1L, true, 1L);
+        });
+        aggregatingTarget = new AggregatingConsulRateLimiter(rateLimiterErrorHandler, consulClient, rateCodec,
+                5, Duration.ofMillis(10), Duration.ofHours(1));
+        target = aggregatingTarget;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        aggregatingTarget.destroy();
+    }
+
+    @Test
+    public void testConsumeLocallyAfterFirstRequest() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        clearInvocations(consulClient);
+
+        Rate rate = null;
+        for (int i = 0; i < 5; i++) {
+            rate = target.consume(policy, "key", null);
+        }
+
+        assertThat(rate.getRemaining()).isEqualTo(4L);
+        verifyNoInteractions(consulClient);
+    }
+
+    @Test
+    public void testFlushWritesUsageOncePerKey() throws Exception {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        for (int i = 0; i < 5; i++) {
+            target.consume(policy, "key", null);
+        }
+        clearInvocations(consulClient);
+
+        aggregatingTarget.flush();
+
+        verify(consulClient, times(1)).setKVBinaryValue(any(), any(), any(PutParams.class));
+        assertThat(rateCodec.decode("key", repository.get("key")).getRemaining()).isEqualTo(4L);
+    }
+
+    @Test
+    public void testFlushSeesUsageOfOtherNodes() throws Exception {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        Rate stored = rateCodec.decode("key", repository.get("key"));
+        stored.setRemaining(3L);
+        repository.put("key", rateCodec.encode(stored));
+        modifyIndexes.merge("key", 1L, Long::sum);
+
+        target.consume(policy, "key", null);
+        aggregatingTarget.flush();
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testFlushKeepsUsageCountedUntilStored() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        for (int i = 0; i < 5; i++) {
+            target.consume(policy, "key", null);
+        }
+        AtomicReference<Rate> duringFlush = new AtomicReference<>();
+        onWrite = () -> duringFlush.set(target.consume(policy, "key", null));
+
+        aggregatingTarget.flush();
+        onWrite = () -> { };
+
+        assertThat(duringFlush.get().getRemaining()).isEqualTo(3L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(2L);
+    }
+
+    @Test
+    public void testFlushForgetsUnusedKeys() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        aggregatingTarget.flush();
+        aggregatingTarget.flush();
+        clearInvocations(consulClient);
+
+        target.consume(policy, "key", null);
+
+        verify(consulClient).getKVBinaryValue(any());
+    }
+
+    @Test
+    public void testConsumeDuringForgettingFlushIsFlushed() throws Exception {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        aggregatingTarget.flush();
+        // the key gets forgotten right after the request found its entry
+        Map<?, ?> entries = (Map<?, ?>) ReflectionTestUtils.getField(aggregatingTarget, "entries");
+        ReflectionTestUtils.setField(aggregatingTarget, "entries", new ConcurrentHashMap<Object, Object>(entries) {
+            private boolean forgetting = true;
+
+            @Override
+            public Object get(Object key) {
+                Object entry = super.get(key);
+                if (forgetting) {
+                    forgetting = false;
+                    aggregatingTarget.flush();
+                }
+                return entry;
+            }
+        });
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(7L);
+        aggregatingTarget.flush();
+
+        assertThat(rateCodec.decode("key", repository.get("key")).getRemaining()).isEqualTo(7L);
+    }
+
+    private Response<Boolean> setKVBinaryValue(InvocationOnMock invocation) {
+        onWrite.run();
+        String key = invocation.getArgument(0);
+        PutParams putParams = invocation.getArgument(2);
+        if (!putParams.getCas().equals(modifyIndexes.getOrDefault(key, 0L))) {
+            return new Response<>(false, 1L, true, 1L);
+        }
+        repository.put(key, invocation.getArgument(1));
+        modifyIndexes.merge(key, 1L, Long::sum);
+        return new Response<>(true, 1L, true, 1L);
+    }
+
+    private Policy policy() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofMinutes(1));
+        return policy;
+    }
+}
@@ -0,0 +1,59 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import java.io.IOException;
+import java.util.Date;
+import org.junit.jupiter.api.Test;
+
+public class BinaryRateCodecTest {
+
+    private final BinaryRateCodec target = new BinaryRateCodec();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Date expiration = new Date(1_600_000_000_123L);
+        Rate rate = new Rate("key", 9L, 800L, 1000L, expiration, 10L);
+
+        byte[] value = target.encode(rate);
+        Rate decoded = target.decode("key", value);
+
+        assertThat(value).hasSize(BinaryRateCodec.LENGTH);
+        assertThat(decoded).isEqualToComparingFieldByField(rate);
+    }
+
+    @Test
+    public void testRoundTripKeepsUnsetFields() throws IOException {
+        Rate rate = new Rate("key", null, 0L, null, null, null);
+
+        Rate decoded = target.decode("key", target.encode(rate));
+
+        assertThat(decoded).isEqualToComparingFieldByField(rate);
+    }
+
+    @Test
+    public void testDecodeJson() throws IOException {
+        byte[] json = new ObjectMapper().writeValueAsBytes(new Rate("key", 9L, 800L, 1000L, new Date(), 10L));
+
+        assertThatThrownBy(() -> target.decode("key", json)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testDecodeEmptyValue() {
+        assertThatThrownBy(() -> target.decode("key", new byte[0])).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testDecodeJsonWithFallback() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Rate rate = new Rate("key", 9L, 800L, 1000L, new Date(1_600_000_000_000L), 10L);
+        BinaryRateCodec fallbackTarget = new BinaryRateCodec(new JacksonRateCodec(objectMapper));
+
+        Rate decoded = fallbackTarget.decode("key", objectMapper.writeValueAsBytes(rate));
+
+        assertThat(decoded).isEqualToComparingFieldByField(rate);
+    }
+}
@@ -2,26 +2,33 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.ecwid.consul.v1.ConsulClient;
 import com.ecwid.consul.v1.Response;
-import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.GetBinaryValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import java.io.IOException;
-import java.util.Base64;
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
 
 public class ConsulRateLimiterTest extends BaseRateLimiterTest {
 
@@ -32,33 +39,34 @@ public class ConsulRateLimiterTest extends BaseRateLimiterTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    private final Map<String, byte[]> repository = Maps.newHashMap();
+    private final Map<String, Long> modifyIndexes = Maps.newHashMap();
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        Map<String, String> repository = Maps.newHashMap();
-        when(consulClient.setKVValue(any(), any())).thenAnswer(invocation -> {
-            String key = invocation.getArgument(0);
-            String value = invocation.getArgument(1);
-            repository.put(key, value);
-            return null;
-        });
-        when(consulClient.getKVValue(any())).thenAnswer(invocation -> {
+        when(consulClient.setKVBinaryValue(any(), any(), any(PutParams.class))).thenAnswer(this::setKVBinaryValue);
+        when(consulClient.getKVBinaryValue(any())).thenAnswer(invocation -> {
             String key = invocation.getArgument(0);
-            GetValue getValue = new GetValue();
-            String value = repository.get(key);
-            getValue.setValue(value != null ? Base64.getEncoder().encodeToString(value.getBytes()) : null);
+            byte[] value = repository.get(key);
+            if (value == null) {
+                return new Response<>(null, 1L, true, 1L);
+            }
+            GetBinaryValue getValue = new GetBinaryValue();
+            getValue.setValue(value);
+            getValue.setModifyIndex(modifyIndexes.get(key));
             return new Response<>(getValue, 1L, true, 1L);
         });
-        ObjectMapper objectMapper = new ObjectMapper();
-        target = new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, objectMapper);
+        target = new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, new BinaryRateCodec(),
+                5, Duration.ofMillis(10));
     }
 
     @Test
     public void testGetRateException() throws IOException {
-        GetValue getValue = new GetValue();
-        getValue.setValue("");
-        when(consulClient.getKVValue(any())).thenReturn(new Response<>(getValue, 1L, true, 1L));
-        when(objectMapper.readValue(anyString(), eq(Rate.class))).thenAnswer(invocation -> {
+        GetBinaryValue getValue = new GetBinaryValue();
+        getValue.setValue(new byte[0]);
+        when(consulClient.getKVBinaryValue(any())).thenReturn(new Response<>(getValue, 1L, true, 1L));
+        when(objectMapper.readValue(any(byte[].class), eq(Rate.class))).thenAnswer(invocation -> {
             throw new IOException();
         });
         ConsulRateLimiter consulRateLimiter = new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, objectMapper);
@@ -67,13 +75,75 @@ public class ConsulRateLimiterTest extends BaseRateLimiterTest {
         assertThat(rate).isNull();
     }
 
+    @Test
+    public void testConsumeUndecodableRate() {
+        repository.put("key", new byte[0]);
+        modifyIndexes.put("key", 1L);
+
+        Rate rate = target.consume(policy(), "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        verify(rateLimiterErrorHandler).handleFetchError(eq("key"), any(IOException.class));
+    }
+
     @Test
     public void testSaveRateException() throws IOException {
         JsonProcessingException jsonProcessingException = Mockito.mock(JsonProcessingException.class);
-        when(objectMapper.writeValueAsString(any())).thenThrow(jsonProcessingException);
+        when(objectMapper.writeValueAsBytes(any())).thenThrow(jsonProcessingException);
         ConsulRateLimiter consulRateLimiter = new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, objectMapper);
 
         consulRateLimiter.saveRate(null);
         verifyNoInteractions(consulClient);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsumeRetriesConcurrentModification() {
+        AtomicBoolean conflict = new AtomicBoolean(true);
+        when(consulClient.setKVBinaryValue(any(), any(), any(PutParams.class))).thenAnswer(invocation ->
+                conflict.getAndSet(false) ? new Response<>(false, 1L, true, 1L) : setKVBinaryValue(invocation));
+
+        Rate rate = target.consume(policy(), "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        verify(consulClient, times(2)).getKVBinaryValue(any());
+        verify(consulClient, times(2)).setKVBinaryValue(any(), any(), any(PutParams.class));
+        verifyNoInteractions(rateLimiterErrorHandler);
+    }
+
+    @Test
+    public void testConsumeGivesUpAfterRetries() {
+        when(consulClient.setKVBinaryValue(any(), any(), any(PutParams.class))).thenReturn(new Response<>(false, 1L, true, 1L));
+        target = new ConsulRateLimiter(rateLimiterErrorHandler, consulClient, new BinaryRateCodec(), 2, Duration.ofMillis(1));
+
+        Rate rate = target.consume(policy(), "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        verify(consulClient, times(3)).setKVBinaryValue(any(), any(), any(PutParams.class));
+        verify(rateLimiterErrorHandler).handleSaveError(eq("key"), any(ConcurrentModificationException.class));
+    }
+
+    @Test
+    public void testConsumeCreatesWithZeroIndex() {
+        target.consume(policy(), "key", null);
+
+        verify(consulClient).setKVBinaryValue(eq("key"), any(), argThat((PutParams putParams) -> putParams.getCas() == 0L));
+    }
+
+    private Response<Boolean> setKVBinaryValue(InvocationOnMock invocation) {
+        String key = invocation.getArgument(0);
+        PutParams putParams = invocation.getArgument(2);
+        if (!putParams.getCas().equals(modifyIndexes.getOrDefault(key, 0L))) {
+            return new Response<>(false, 1L, true, 1L);
+        }
+        repository.put(key, invocation.getArgument(1));
+        modifyIndexes.merge(key, 1L, Long::sum);
+        return new Response<>(true, 1L, true, 1L);
+    }
+
+    private Policy policy() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(2));
+        return policy;
+    }
+}
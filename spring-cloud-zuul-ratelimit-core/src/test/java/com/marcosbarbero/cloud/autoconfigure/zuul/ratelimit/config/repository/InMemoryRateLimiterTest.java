@@ -0,0 +1,123 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryRateLimiterTest extends BaseRateLimiterTest {
+
+    private InMemoryRateLimiter inMemoryRateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        inMemoryRateLimiter = new InMemoryRateLimiter(Duration.ofHours(1));
+        target = inMemoryRateLimiter;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        inMemoryRateLimiter.destroy();
+    }
+
+    @Test
+    public void testConsumeExceedLimit() {
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(1L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        assertThat(target.consume(policy, "key", 100L).getRemaining()).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testConsumeReset() {
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getReset()).isBetween(59_000L, 61_000L);
+    }
+
+    @Test
+    public void testConsumeAfterWindowEnds() throws InterruptedException {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+
+        TimeUnit.MILLISECONDS.sleep(2100);
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testEvictExpired() throws InterruptedException {
+        Policy shortPolicy = new Policy();
+        shortPolicy.setLimit(10L);
+        shortPolicy.setRefreshInterval(Duration.ofSeconds(1));
+        Policy longPolicy = new Policy();
+        longPolicy.setLimit(10L);
+        longPolicy.setQuota(Duration.ofSeconds(10));
+        longPolicy.setRefreshInterval(Duration.ofSeconds(60));
+
+        target.consume(shortPolicy, "short", null);
+        target.consume(longPolicy, "long", null);
+        assertThat(inMemoryRateLimiter.size()).isEqualTo(3);
+
+        TimeUnit.MILLISECONDS.sleep(2100);
+        inMemoryRateLimiter.evictExpired();
+
+        assertThat(inMemoryRateLimiter.size()).isEqualTo(2);
+        assertThat(target.consume(longPolicy, "long", null).getRemaining()).isEqualTo(8L);
+        assertThat(target.consume(shortPolicy, "short", null).getRemaining()).isEqualTo(9L);
+    }
+
+    @Test
+    public void testConsumeUnderParallelLoad() throws InterruptedException {
+        Policy policy = new Policy();
+        policy.setLimit(100_000L);
+        policy.setQuota(Duration.ofSeconds(100_000));
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        int threads = 8;
+        int requestsPerThread = 1000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        target.consume(policy, "key", null);
+                        target.consume(policy, "key", 2L);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Rate rate = target.consume(policy, "key", 0L);
+        assertThat(rate.getRemaining()).isEqualTo(100_000L - threads * requestsPerThread);
+        assertThat(rate.getRemainingQuota()).isEqualTo(100_000_000L - 2L * threads * requestsPerThread);
+    }
+}
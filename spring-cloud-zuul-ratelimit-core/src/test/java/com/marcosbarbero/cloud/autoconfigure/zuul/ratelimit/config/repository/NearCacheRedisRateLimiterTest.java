@@ -0,0 +1,176 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@SuppressWarnings("unchecked")
+public class NearCacheRedisRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private NearCacheRedisRateLimiter target;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        doReturn(Arrays.asList(100L, 1L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+        target = new NearCacheRedisRateLimiter(rateLimiterErrorHandler, redisTemplate, 0.1, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void testConsumeLimitLocallyWithinLease() {
+        Policy policy = limitPolicy();
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isEqualTo(99L);
+        verify(redisTemplate).execute(any(), anyList(), eq("0"), anyString(), anyString());
+        clearInvocations(redisTemplate);
+
+        for (int i = 1; i <= 9; i++) {
+            rate = target.consume(policy, "key", null);
+            assertThat(rate.getRemaining()).isEqualTo(99L - i);
+        }
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testConsumeLimitSettlesWhenLeaseExceeded() {
+        Policy policy = limitPolicy();
+        target.consume(policy, "key", null);
+        clearInvocations(redisTemplate);
+        doReturn(Arrays.asList(88L, 1L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+
+        Rate rate = null;
+        for (int i = 0; i < 10; i++) {
+            rate = target.consume(policy, "key", null);
+        }
+
+        verify(redisTemplate).execute(any(), anyList(), eq("11"), anyString(), anyString());
+        assertThat(rate.getRemaining()).isEqualTo(88L);
+    }
+
+    @Test
+    public void testSettleFlushesPendingUsageAndForgetsIdleKeys() {
+        Policy policy = limitPolicy();
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        clearInvocations(redisTemplate);
+
+        target.settle();
+        verify(redisTemplate).execute(any(), anyList(), eq("3"), anyString(), anyString());
+
+        clearInvocations(redisTemplate);
+        target.settle();
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString(), anyString());
+
+        target.consume(policy, "key", null);
+        verify(redisTemplate).execute(any(), anyList(), eq("0"), anyString(), anyString());
+    }
+
+    @Test
+    public void testConsumeLimitCountsOnlyAdmittedRequests() {
+        doReturn(Arrays.asList(2L, 1L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+        Policy policy = limitPolicy();
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(1L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        clearInvocations(redisTemplate);
+
+        target.settle();
+        verify(redisTemplate).execute(any(), anyList(), eq("2"), anyString(), anyString());
+    }
+
+    @Test
+    public void testSettleKeepsShortfallOfOtherNodes() {
+        Policy policy = limitPolicy();
+        for (int i = 0; i < 5; i++) {
+            target.consume(policy, "key", null);
+        }
+        doReturn(Arrays.asList(0L, 1L, 1L, 3L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+
+        target.settle();
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testSettleKeepsUsagePendingWhenRedisFails() {
+        Policy policy = limitPolicy();
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        doThrow(new RuntimeException()).doReturn(Arrays.asList(98L, 1L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+
+        target.settle();
+        assertThat(target.consume(policy, "key", 0L).getRemaining()).isEqualTo(98L);
+        target.settle();
+
+        verify(redisTemplate, times(2)).execute(any(), anyList(), eq("2"), anyString(), anyString());
+        verify(rateLimiterErrorHandler).handleError(anyString(), any());
+        assertThat(target.consume(policy, "key", 0L).getRemaining()).isEqualTo(98L);
+    }
+
+    @Test
+    public void testConsumeQuotaLocally() {
+        doReturn(0L).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        Policy policy = new Policy();
+        policy.setQuota(Duration.ofSeconds(10));
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        Rate rate = target.consume(policy, "key", 500L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(9500L);
+
+        rate = target.consume(policy, "key", 300L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(9200L);
+        rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemainingQuota()).isEqualTo(9200L);
+        verify(redisTemplate, times(1)).execute(any(), anyList(), anyString(), anyString());
+
+        doReturn(800L).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        target.settle();
+        verify(redisTemplate).execute(any(), anyList(), eq("800"), anyString());
+        assertThat(target.consume(policy, "key", null).getRemainingQuota()).isEqualTo(9200L);
+    }
+
+    private Policy limitPolicy() {
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+        return policy;
+    }
+}
@@ -0,0 +1,112 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapRateLimiterTest extends BaseRateLimiterTest {
+
+    @BeforeEach
+    public void setUp() {
+        target = new OffHeapRateLimiter(1024);
+    }
+
+    @Test
+    public void testCapacity() {
+        assertThat(new OffHeapRateLimiter(1).capacity()).isEqualTo(OffHeapRateLimiter.BUCKET_SIZE);
+        assertThat(new OffHeapRateLimiter(1000).capacity()).isEqualTo(1024);
+        assertThatThrownBy(() -> new OffHeapRateLimiter(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new OffHeapRateLimiter(OffHeapRateLimiter.MAX_CAPACITY + 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testConsumeExceedLimit() {
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(1L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        assertThat(target.consume(policy, "other", null).getRemaining()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testConsumeAfterWindowEnds() throws InterruptedException {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+
+        TimeUnit.MILLISECONDS.sleep(2100);
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testEvictionGivesReferencedKeysASecondChance() {
+        target = new OffHeapRateLimiter(1);
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        for (int i = 0; i < OffHeapRateLimiter.BUCKET_SIZE; i++) {
+            assertThat(target.consume(policy, "key" + i, null).getRemaining()).isEqualTo(99L);
+        }
+
+        // bucket is full and every slot referenced: the hand clears all bits and evicts key0
+        target.consume(policy, "a", null);
+        assertThat(target.consume(policy, "key1", null).getRemaining()).isEqualTo(98L);
+
+        // key1 was referenced again, so key2 is the next victim
+        target.consume(policy, "b", null);
+        assertThat(target.consume(policy, "key1", null).getRemaining()).isEqualTo(97L);
+        assertThat(target.consume(policy, "key2", null).getRemaining()).isEqualTo(99L);
+    }
+
+    @Test
+    public void testConsumeUnderParallelLoad() throws InterruptedException {
+        Policy policy = new Policy();
+        policy.setLimit(100_000L);
+        policy.setQuota(Duration.ofSeconds(100_000));
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        int threads = 8;
+        int requestsPerThread = 1000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        target.consume(policy, "key", null);
+                        target.consume(policy, "key", 2L);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Rate rate = target.consume(policy, "key", 0L);
+        assertThat(rate.getRemaining()).isEqualTo(100_000L - threads * requestsPerThread);
+        assertThat(rate.getRemainingQuota()).isEqualTo(100_000_000L - 2L * threads * requestsPerThread);
+    }
+}
@@ -0,0 +1,108 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+
+public class ReactiveRedisRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private StringRedisTemplate redisTemplate;
+    @Mock
+    private ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    private ReactiveRedisRateLimiter target;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        doAnswer(invocation -> {
+            List<String> keys = invocation.getArgument(1);
+            return keys.get(0).endsWith(RedisRateLimiter.QUOTA_SUFFIX) ? Flux.just(300L) : Flux.just(9L, 2L, 1L);
+        }).when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+        target = new ReactiveRedisRateLimiter(rateLimiterErrorHandler, redisTemplate, reactiveRedisTemplate);
+    }
+
+    @Test
+    public void testConsumeAsync() {
+        Rate rate = target.consumeAsync(policy(), "key", null).toCompletableFuture().join();
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(700L);
+        assertThat(rate.getReset()).isEqualTo(Duration.ofSeconds(60).toMillis());
+        verify(reactiveRedisTemplate, times(2)).execute(any(RedisScript.class), anyList(), anyList());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    public void testConsumeAsyncError() {
+        doAnswer(invocation -> Flux.error(new RuntimeException()))
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+
+        Rate rate = target.consumeAsync(policy(), "key", 100L).toCompletableFuture().join();
+
+        assertThat(rate.getRemaining()).isEqualTo(0L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(1000L);
+        verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
+        verify(rateLimiterErrorHandler).handleError(matches(".* key-quota, .*"), any());
+    }
+
+    @Test
+    public void testConsumeAllAsync() {
+        Policy limitOnly = new Policy();
+        limitOnly.setLimit(10L);
+
+        List<Rate> rates = target.consumeAllAsync(Arrays.asList(policy(), limitOnly), Arrays.asList("first", "second"), null)
+                .toCompletableFuture().join();
+
+        assertThat(rates).extracting(Rate::getKey).containsExactly("first", "second");
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 9L);
+        assertThat(rates).extracting(Rate::getRemainingQuota).containsExactly(700L, null);
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    public void testConsumeAllAsyncStopsAtExceededLimit() {
+        doAnswer(invocation -> Flux.just(-1L, 2L, 1L))
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+        Policy limitOnly = new Policy();
+        limitOnly.setLimit(10L);
+
+        List<Rate> rates = target.consumeAllAsync(Arrays.asList(limitOnly, limitOnly), Arrays.asList("first", "second"),
+                null).toCompletableFuture().join();
+
+        assertThat(rates).extracting(Rate::getKey).containsExactly("first");
+        verify(reactiveRedisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList("first")), anyList());
+        verify(reactiveRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), anyList());
+    }
+
+    private Policy policy() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setQuota(Duration.ofSeconds(1));
+        return policy;
+    }
+}
@@ -1,6 +1,7 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
 import com.google.common.collect.Maps;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -8,6 +9,9 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.BoundValueOperations;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -15,8 +19,10 @@ import org.springframework.data.redis.core.ValueOperations;
 
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -33,9 +39,8 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
         MockitoAnnotations.initMocks(this);
         doReturn(2L)
                 .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
-        doReturn(1L).when(redisTemplate).execute((RedisCallback<Object>) any());
-        doReturn(Arrays.asList(9L, 2L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(9L, 2L, 1L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
 
         this.target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate);
     }
@@ -54,7 +59,7 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
 
     @Test
     public void testConsumeRemainingLimitException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
@@ -65,7 +70,7 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
     @Test
     public void testConsumeRemainingQuotaLimitException() {
         doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
 
         Policy policy = new Policy();
         policy.setQuota(Duration.ofSeconds(100));
@@ -75,20 +80,97 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
 
     @Test
     public void testConsumeGetExpireException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(),anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate)
+                .execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
         policy.setQuota(Duration.ofSeconds(50));
-        target.consume(policy, "key", 0L);
+        Rate rate = target.consume(policy, "key", 0L);
         verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
-        verify(rateLimiterErrorHandler).handleError(matches(".* key-quota, .*"), any());
+        assertThat(rate.getRemainingQuota()).isEqualTo(50000L);
+    }
+
+    @Test
+    public void testConsumeLimitAndQuotaInOneCall() {
+        doReturn(Arrays.asList(99L, 1L, 1L, 300L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setQuota(Duration.ofSeconds(50));
+        Rate rate = target.consume(policy, "key", 300L);
+
+        assertThat(rate.getRemaining()).isEqualTo(99L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(49700L);
+        assertThat(rate.getReset()).isEqualTo(Duration.ofSeconds(60).toMillis());
+        verify(redisTemplate).execute(any(), eq(Arrays.asList("key", "key-quota")),
+                eq("0"), anyString(), anyString(), eq("300"), eq("60"));
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString(), anyString());
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString());
+    }
+
+    @Test
+    public void testConsumeLimitAndQuotaSeparatelyAcrossSlots() {
+        doThrow(new RuntimeException("CROSSSLOT Keys in request don't hash to the same slot")).when(redisTemplate)
+                .execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setQuota(Duration.ofSeconds(50));
+        Rate rate = target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(49998L);
+        verify(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(redisTemplate, times(2)).execute(any(), anyList(), anyString(), anyString(), anyString());
+        verify(redisTemplate, times(2)).execute(any(), anyList(), anyString(), anyString());
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeLimitAndQuotaCombinedAfterOtherSlotErrors() {
+        doThrow(new RuntimeException("CLUSTERDOWN Hash slot not served")).when(redisTemplate)
+                .execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setQuota(Duration.ofSeconds(50));
+        Rate rate = target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(0L);
+        verify(redisTemplate, times(2))
+                .execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString(), anyString());
+        verify(rateLimiterErrorHandler, times(2)).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumePassesServerTimeWhenScriptsCannotReadIt() {
+        doThrow(new RuntimeException("NOTIME scripts cannot read the time, pass the current time")).when(redisTemplate)
+                .execute(any(), anyList(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(9L, 100L, 103L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(103_000L).when(redisTemplate).execute(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+        target.consume(policy, "key", null);
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getReset()).isEqualTo(3L);
+        verify(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+        verify(redisTemplate, times(2)).execute(any(), anyList(), eq("1"), eq("166"), anyString(), eq("103"));
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
     }
 
     @Test
     public void testConsumeExpireException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(),anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
@@ -98,14 +180,160 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
 
     @Test
     public void testConsumeSetKey() {
-        doReturn(Arrays.asList( 1L, 1L), Arrays.asList(2L, 2L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(1L, 1L, 1L), Arrays.asList(2L, 2L, 1L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
 
         Policy policy = new Policy();
         policy.setLimit(20L);
         target.consume(policy, "key", 0L);
 
-        verify(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        verify(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeResetUsesScriptTime() {
+        doReturn(Arrays.asList(9L, 100L, 103L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getReset()).isEqualTo(3L);
+        verify(redisTemplate).execute(any(), anyList(), eq("1"), eq("166"), anyString());
+        verify(redisTemplate, never()).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    public void testConsumeAllInOnePipeline() {
+        RedisConnection connection = mock(RedisConnection.class);
+        doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return Arrays.asList(Arrays.asList(9L, 2L, 1L), 300L, Arrays.asList(19L, 2L, 1L));
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy limitAndQuota = new Policy();
+        limitAndQuota.setLimit(10L);
+        limitAndQuota.setQuota(Duration.ofSeconds(1));
+        Policy limitOnly = new Policy();
+        limitOnly.setLimit(20L);
+        List<Rate> rates = target.consumeAll(Arrays.asList(limitAndQuota, limitOnly), Arrays.asList("first", "second"), null);
+
+        assertThat(rates).extracting(Rate::getKey).containsExactly("first", "second");
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 19L);
+        assertThat(rates).extracting(Rate::getRemainingQuota).containsExactly(700L, null);
+        verify(connection, times(2)).evalSha(anyString(), eq(ReturnType.MULTI), eq(1), any());
+        verify(connection).evalSha(anyString(), eq(ReturnType.INTEGER), eq(1), any());
+        verify(connection, never()).eval(any(), any(), anyInt(), any());
+        verify(redisTemplate, never()).execute(any(), anyList(), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testConsumeAllSendsScriptsUnknownToRedis() {
+        RedisConnection connection = mock(RedisConnection.class);
+        RuntimeException noScript = new RuntimeException("NOSCRIPT No matching script. Please use EVAL.");
+        doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            throw new RedisPipelineException(noScript, Arrays.asList(noScript, noScript));
+        }).doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return Arrays.asList(Arrays.asList(9L, 2L, 1L), Arrays.asList(19L, 2L, 1L));
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        List<Rate> rates = target.consumeAll(Arrays.asList(policy, policy), Arrays.asList("first", "second"), null);
+
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 19L);
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        verify(connection, times(2)).evalSha(anyString(), eq(ReturnType.MULTI), eq(1), any());
+        verify(connection, times(2)).eval(any(), eq(ReturnType.MULTI), eq(1), any());
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeAllSendsAgainOnlyScriptsUnknownToRedis() {
+        RedisConnection connection = mock(RedisConnection.class);
+        RuntimeException noScript = new RuntimeException("NOSCRIPT No matching script. Please use EVAL.");
+        doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            throw new RedisPipelineException(noScript, Arrays.asList(Arrays.asList(9L, 2L, 1L), noScript));
+        }).doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return Arrays.asList(300L);
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy limitOnly = new Policy();
+        limitOnly.setLimit(10L);
+        Policy quotaOnly = new Policy();
+        quotaOnly.setQuota(Duration.ofSeconds(1));
+        List<Rate> rates = target.consumeAll(Arrays.asList(limitOnly, quotaOnly), Arrays.asList("first", "second"),
+                null);
+
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, null);
+        assertThat(rates).extracting(Rate::getRemainingQuota).containsExactly(null, 700L);
+        verify(connection).evalSha(anyString(), eq(ReturnType.MULTI), eq(1), any());
+        verify(connection).evalSha(anyString(), eq(ReturnType.INTEGER), eq(1), any());
+        verify(connection, never()).eval(any(), eq(ReturnType.MULTI), anyInt(), any());
+        verify(connection).eval(any(), eq(ReturnType.INTEGER), eq(1), any());
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeAllDoesNotSendAgainOnOtherErrors() {
+        RuntimeException noScript = new RuntimeException("NOSCRIPT No matching script. Please use EVAL.");
+        RuntimeException outOfMemory = new RuntimeException("OOM command not allowed");
+        doThrow(new RedisPipelineException(outOfMemory, Arrays.asList(noScript, outOfMemory)))
+                .when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        List<Rate> rates = target.consumeAll(Arrays.asList(policy, policy), Arrays.asList("first", "second"), null);
+
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(0L, 0L);
+        verify(redisTemplate).executePipelined(any(RedisCallback.class));
+        verify(rateLimiterErrorHandler).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeAllGivesBackLimitsFollowingExceededOne() {
+        RedisConnection connection = mock(RedisConnection.class);
+        doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return Arrays.asList(Arrays.asList(-1L, 2L, 1L), Arrays.asList(19L, 2L, 1L), Arrays.asList(-1L, 2L, 1L));
+        }).doAnswer(invocation -> {
+            invocation.<RedisCallback<Object>>getArgument(0).doInRedis(connection);
+            return Arrays.asList(20L);
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        List<Rate> rates = target.consumeAll(Arrays.asList(policy, policy, policy),
+                Arrays.asList("first", "second", "third"), null);
+
+        assertThat(rates).extracting(Rate::getKey).containsExactly("first");
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(-1L);
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        verify(connection).evalSha(anyString(), eq(ReturnType.INTEGER), eq(1), eq("second".getBytes()), eq("1".getBytes()),
+                any());
+        verify(rateLimiterErrorHandler, never()).handleError(any(), any());
+    }
+
+    @Test
+    public void testConsumeAllWithoutPipelineSupport() {
+        doThrow(new UnsupportedOperationException()).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        List<Rate> rates = target.consumeAll(Arrays.asList(policy, policy), Arrays.asList("first", "second"), null);
+        target.consumeAll(Arrays.asList(policy, policy), Arrays.asList("first", "second"), null);
+
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 9L);
+        verify(redisTemplate).executePipelined(any(RedisCallback.class));
+        verify(redisTemplate, times(4)).execute(any(), anyList(), anyString(), anyString(), anyString());
         verify(rateLimiterErrorHandler, never()).handleError(any(), any());
     }
-}
\ No newline at end of file
+}
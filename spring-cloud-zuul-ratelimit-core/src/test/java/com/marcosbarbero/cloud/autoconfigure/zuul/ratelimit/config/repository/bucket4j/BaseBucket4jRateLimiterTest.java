@@ -0,0 +1,171 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public abstract class BaseBucket4jRateLimiterTest extends BaseRateLimiterTest {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 50;
+
+    @Test
+    public void testConsumeLimitUnderParallelLoad() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(1000L);
+        policy.setRefreshInterval(Duration.ofDays(365));
+
+        List<Rate> rates = consumeInParallel(() -> target.consume(policy, "parallel-limit", null));
+
+        long expected = 1000L - THREADS * REQUESTS_PER_THREAD;
+        assertThat(rates).extracting(Rate::getRemaining).doesNotHaveDuplicates().allMatch(remaining -> remaining >= expected);
+        assertThat(target.consume(policy, "parallel-limit", null).getRemaining()).isEqualTo(expected - 1);
+    }
+
+    @Test
+    public void testConsumeQuotaUnderParallelLoad() throws Exception {
+        Policy policy = new Policy();
+        policy.setQuota(Duration.ofSeconds(1000));
+        policy.setRefreshInterval(Duration.ofDays(365));
+
+        consumeInParallel(() -> target.consume(policy, "parallel-quota", 10L));
+
+        long expected = Duration.ofSeconds(1000).toMillis() - THREADS * REQUESTS_PER_THREAD * 10L;
+        assertThat(target.consume(policy, "parallel-quota", null).getRemainingQuota()).isEqualTo(expected);
+    }
+
+    @Test
+    public void testConsumeAll() {
+        Policy limit = new Policy();
+        limit.setLimit(10L);
+        limit.setRefreshInterval(Duration.ofDays(365));
+        Policy limitAndQuota = new Policy();
+        limitAndQuota.setLimit(20L);
+        limitAndQuota.setQuota(Duration.ofSeconds(1));
+        limitAndQuota.setRefreshInterval(Duration.ofDays(365));
+
+        List<Rate> rates = target.consumeAll(Arrays.asList(limit, limitAndQuota), Arrays.asList("all-1", "all-2"), null);
+        assertThat(rates).extracting(Rate::getKey).containsExactly("all-1", "all-2");
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 19L);
+        assertThat(rates).extracting(Rate::getRemainingQuota).containsExactly(null, 1000L);
+
+        rates = target.consumeAll(Arrays.asList(limit, limitAndQuota), Arrays.asList("all-1", "all-2"), 800L);
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(9L, 19L);
+        assertThat(rates).extracting(Rate::getRemainingQuota).containsExactly(null, 200L);
+    }
+
+    @Test
+    public void testConsumeAllStopsAtExceededLimit() {
+        Policy exceeded = new Policy();
+        exceeded.setLimit(1L);
+        exceeded.setRefreshInterval(Duration.ofDays(365));
+        Policy limit = new Policy();
+        limit.setLimit(10L);
+        limit.setRefreshInterval(Duration.ofDays(365));
+        target.consume(exceeded, "stop-1", null);
+
+        List<Rate> rates = target.consumeAll(Arrays.asList(exceeded, limit), Arrays.asList("stop-1", "stop-2"), null);
+        assertThat(rates).extracting(Rate::getRemaining).containsExactly(-1L);
+        assertThat(target.consume(limit, "stop-2", null).getRemaining()).isEqualTo(9L);
+    }
+
+    @Test
+    public void testConsumeAsync() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setQuota(Duration.ofSeconds(1));
+        policy.setRefreshInterval(Duration.ofDays(365));
+
+        Rate rate = target.consumeAsync(policy, "async", null).toCompletableFuture().join();
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(1000L);
+
+        rate = target.consumeAsync(policy, "async", 800L).toCompletableFuture().join();
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(200L);
+    }
+
+    @Test
+    public void testConsumeLimitAndQuota() {
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        policy.setQuota(Duration.ofSeconds(1));
+        policy.setRefreshInterval(Duration.ofDays(365));
+
+        Rate rate = target.consume(policy, "limit-quota", null);
+        assertThat(rate.getRemaining()).isEqualTo(1L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(1000L);
+        rate = target.consume(policy, "limit-quota", 600L);
+        assertThat(rate.getRemaining()).isEqualTo(1L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(400L);
+
+        target.consume(policy, "limit-quota", null);
+        rate = target.consume(policy, "limit-quota", null);
+        assertThat(rate.getRemaining()).isEqualTo(-1L);
+        rate = target.consume(policy, "limit-quota", 600L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(-1L);
+    }
+
+    @Test
+    public void testConsumeSharesBucketOfEqualPolicies() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofDays(365));
+        Policy samePolicy = new Policy();
+        samePolicy.setLimit(10L);
+        samePolicy.setRefreshInterval(Duration.ofDays(365));
+
+        assertThat(target.consume(policy, "shared", null).getRemaining()).isEqualTo(9L);
+        assertThat(target.consume(samePolicy, "shared", null).getRemaining()).isEqualTo(8L);
+    }
+
+    @Test
+    public void testConsumeKeepsLimitAndQuotaBucketsApart() {
+        Policy policy = new Policy();
+        policy.setLimit(1000L);
+        policy.setQuota(Duration.ofSeconds(1));
+        policy.setRefreshInterval(Duration.ofDays(365));
+
+        target.consume(policy, "apart", 100L);
+        Rate rate = target.consume(policy, "apart", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(999L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(900L);
+    }
+
+    private List<Rate> consumeInParallel(Callable<Rate> consume) throws InterruptedException {
+        List<Rate> rates = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                        rates.add(consume.call());
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(rates).hasSize(THREADS * REQUESTS_PER_THREAD);
+        return rates;
+    }
+}
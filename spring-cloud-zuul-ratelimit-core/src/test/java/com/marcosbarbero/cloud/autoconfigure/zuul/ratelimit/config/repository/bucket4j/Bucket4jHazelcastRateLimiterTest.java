@@ -2,14 +2,13 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.b
 
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.mockito.MockitoAnnotations;
 
-public class Bucket4jHazelcastRateLimiterTest extends BaseRateLimiterTest {
+public class Bucket4jHazelcastRateLimiterTest extends BaseBucket4jRateLimiterTest {
 
     private static HazelcastInstance hazelcastInstance;
 
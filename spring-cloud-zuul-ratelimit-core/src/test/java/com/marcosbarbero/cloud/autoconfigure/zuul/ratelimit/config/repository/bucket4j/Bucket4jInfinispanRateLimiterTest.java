@@ -1,6 +1,5 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
 
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
 import io.github.bucket4j.grid.GridBucketState;
 import org.infinispan.AdvancedCache;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
@@ -12,7 +11,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.mockito.MockitoAnnotations;
 
-public class Bucket4jInfinispanRateLimiterTest extends BaseRateLimiterTest {
+public class Bucket4jInfinispanRateLimiterTest extends BaseBucket4jRateLimiterTest {
 
     @BeforeEach
     public void setUp() {
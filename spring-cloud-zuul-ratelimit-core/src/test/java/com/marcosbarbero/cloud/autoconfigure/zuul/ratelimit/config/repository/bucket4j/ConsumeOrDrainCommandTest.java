@@ -0,0 +1,62 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket4j;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.BucketState;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.grid.GridBucketState;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ConsumeOrDrainCommandTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private GridBucketState state;
+
+    @BeforeEach
+    public void setUp() {
+        BucketConfiguration configuration = Bucket4j.configurationBuilder()
+                .addLimit(Bandwidth.simple(10L, Duration.ofMinutes(1)))
+                .build();
+        state = new GridBucketState(configuration, BucketState.createInitialState(configuration, NOW));
+    }
+
+    @Test
+    public void testConsume() {
+        ConsumeOrDrainCommand command = new ConsumeOrDrainCommand(4L);
+
+        ConsumptionProbe probe = command.execute(state, NOW);
+
+        assertThat(probe.isConsumed()).isTrue();
+        assertThat(probe.getRemainingTokens()).isEqualTo(6L);
+        assertThat(command.isBucketStateModified()).isTrue();
+    }
+
+    @Test
+    public void testDrainOnRejection() {
+        ConsumeOrDrainCommand command = new ConsumeOrDrainCommand(15L);
+
+        ConsumptionProbe probe = command.execute(state, NOW);
+
+        assertThat(probe.isConsumed()).isFalse();
+        assertThat(probe.getRemainingTokens()).isEqualTo(10L);
+        assertThat(probe.getNanosToWaitForRefill()).isPositive();
+        assertThat(command.isBucketStateModified()).isTrue();
+        assertThat(state.getAvailableTokens()).isZero();
+    }
+
+    @Test
+    public void testCheckWithoutConsuming() {
+        ConsumeOrDrainCommand command = new ConsumeOrDrainCommand(0L);
+
+        ConsumptionProbe probe = command.execute(state, NOW);
+
+        assertThat(probe.getRemainingTokens()).isEqualTo(10L);
+        assertThat(command.isBucketStateModified()).isFalse();
+    }
+}
@@ -0,0 +1,202 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Maps;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class BatchingJpaRateLimiterTest extends BaseRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private RateLimiterRepository rateLimiterRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<String, Rate> repository = Maps.newHashMap();
+
+    private BatchingJpaRateLimiter batchingTarget;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(rateLimiterRepository.save(any(Rate.class))).thenAnswer(invocationOnMock -> {
+            Rate rate = invocationOnMock.getArgument(0);
+            repository.put(rate.getKey(), rate);
+            return rate;
+        });
+        doAnswer(invocationOnMock -> {
+            Rate rate = invocationOnMock.getArgument(0);
+            repository.put(rate.getKey(), rate);
+            return null;
+        }).when(rateLimiterRepository).insert(any(Rate.class));
+        when(rateLimiterRepository.consume(anyString(), anyLong(), anyLong(), any())).thenReturn(Optional.empty());
+        when(rateLimiterRepository.renew(any(Rate.class), any())).thenReturn(0);
+        when(rateLimiterRepository.findById(any())).thenAnswer(invocationOnMock -> {
+            String key = invocationOnMock.getArgument(0);
+            return Optional.ofNullable(repository.get(key));
+        });
+        when(rateLimiterRepository.lockAll(anyCollection())).thenAnswer(invocationOnMock -> {
+            Collection<String> keys = invocationOnMock.getArgument(0);
+            return keys.stream().map(repository::get).filter(Objects::nonNull).collect(Collectors.toList());
+        });
+
+        batchingTarget = new BatchingJpaRateLimiter(rateLimiterErrorHandler, rateLimiterRepository,
+            transactionManager, 0.5, Duration.ofHours(1));
+        target = batchingTarget;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batchingTarget.destroy();
+    }
+
+    @Test
+    public void testConsumeLocallyAfterFirstRequest() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        clearInvocations(rateLimiterRepository);
+
+        Rate rate = null;
+        for (int i = 0; i < 5; i++) {
+            rate = target.consume(policy, "key", null);
+        }
+
+        assertThat(rate.getRemaining()).isEqualTo(4L);
+        verifyNoInteractions(rateLimiterRepository, transactionManager);
+    }
+
+    @Test
+    public void testFlushWritesAllKeysInOneTransaction() {
+        Policy policy = policy();
+        for (String key : new String[]{"first", "second"}) {
+            for (int i = 0; i < 4; i++) {
+                target.consume(policy, key, null);
+            }
+        }
+        clearInvocations(rateLimiterRepository);
+
+        batchingTarget.flush();
+
+        verify(rateLimiterRepository, times(1)).lockAll(anyCollection());
+        verify(transactionManager, times(1)).commit(any());
+        assertThat(repository.get("first").getRemaining()).isEqualTo(6L);
+        assertThat(repository.get("second").getRemaining()).isEqualTo(6L);
+    }
+
+    @Test
+    public void testExceedingMaxDriftFlushesSynchronously() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        for (int i = 0; i < 5; i++) {
+            target.consume(policy, "key", null);
+        }
+        verifyNoInteractions(transactionManager);
+
+        target.consume(policy, "key", null);
+
+        verify(transactionManager).commit(any());
+        assertThat(repository.get("key").getRemaining()).isEqualTo(3L);
+    }
+
+    @Test
+    public void testFlushRenewsExpiredRate() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        repository.get("key").setExpiration(new Date(System.currentTimeMillis() - 1));
+
+        batchingTarget.flush();
+
+        assertThat(repository.get("key").getRemaining()).isEqualTo(9L);
+        assertThat(repository.get("key").getExpiration()).isInTheFuture();
+    }
+
+    @Test
+    public void testFailedFlushKeepsUsage() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        QueryTimeoutException exception = new QueryTimeoutException("timeout");
+        when(rateLimiterRepository.lockAll(anyCollection())).thenThrow(exception).thenAnswer(
+            invocationOnMock -> Collections.singletonList(repository.get("key")));
+
+        batchingTarget.flush();
+        verify(rateLimiterErrorHandler).handleSaveError(eq("key"), eq(exception));
+        batchingTarget.flush();
+
+        assertThat(repository.get("key").getRemaining()).isEqualTo(8L);
+    }
+
+    @Test
+    public void testFlushKeepsUsageCountedUntilStored() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        for (int i = 0; i < 4; i++) {
+            target.consume(policy, "key", null);
+        }
+        AtomicReference<Rate> duringFlush = new AtomicReference<>();
+        doAnswer(invocationOnMock -> {
+            duringFlush.set(target.consume(policy, "key", null));
+            Rate rate = repository.get("key");
+            return Collections.singletonList(new Rate(rate.getKey(), rate.getRemaining(), rate.getRemainingQuota(),
+                rate.getReset(), rate.getExpiration(), rate.getCapacity()));
+        }).when(rateLimiterRepository).lockAll(anyCollection());
+
+        batchingTarget.flush();
+
+        assertThat(duringFlush.get().getRemaining()).isEqualTo(4L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(3L);
+    }
+
+    @Test
+    public void testFlushForgetsUnusedKeys() {
+        Policy policy = policy();
+        target.consume(policy, "key", null);
+        batchingTarget.flush();
+        batchingTarget.flush();
+        clearInvocations(rateLimiterRepository);
+
+        target.consume(policy, "key", null);
+
+        verify(rateLimiterRepository).consume(eq("key"), eq(1L), eq(0L), any());
+    }
+
+    private Policy policy() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofMinutes(1));
+        return policy;
+    }
+}
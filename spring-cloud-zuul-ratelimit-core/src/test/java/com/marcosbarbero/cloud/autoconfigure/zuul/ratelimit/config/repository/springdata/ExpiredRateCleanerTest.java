@@ -0,0 +1,47 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+public class ExpiredRateCleanerTest {
+
+    private RateLimiterRepository repository;
+    private ExpiredRateCleaner target;
+
+    @BeforeEach
+    public void setUp() {
+        repository = mock(RateLimiterRepository.class);
+        target = new ExpiredRateCleaner(repository, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void testCleanupDeletesExpiredRates() {
+        target.cleanup();
+
+        verify(repository).deleteExpired(any());
+    }
+
+    @Test
+    public void testCleanupContinuesAfterFailure() {
+        when(repository.deleteExpired(any())).thenThrow(new QueryTimeoutException("timeout")).thenReturn(1);
+
+        target.cleanup();
+        target.cleanup();
+
+        verify(repository, times(2)).deleteExpired(any());
+    }
+}
@@ -1,17 +1,32 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
 
 public class JpaRateLimiterTest extends BaseRateLimiterTest {
 
@@ -24,10 +39,36 @@ public class JpaRateLimiterTest extends BaseRateLimiterTest {
     public void setUp() {
         MockitoAnnotations.initMocks(this);
         Map<String, Rate> repository = Maps.newHashMap();
-        when(rateLimiterRepository.save(any(Rate.class))).thenAnswer(invocationOnMock -> {
+        doAnswer(invocationOnMock -> {
             Rate rate = invocationOnMock.getArgument(0);
+            if (repository.putIfAbsent(rate.getKey(), rate) != null) {
+                throw new DataIntegrityViolationException(rate.getKey());
+            }
+            return null;
+        }).when(rateLimiterRepository).insert(any(Rate.class));
+        when(rateLimiterRepository.consume(anyString(), anyLong(), anyLong(), any())).thenAnswer(invocationOnMock -> {
+            Rate rate = repository.get(invocationOnMock.<String>getArgument(0));
+            if (rate == null || rate.getExpiration().before(invocationOnMock.getArgument(3))) {
+                return Optional.empty();
+            }
+            long limitUsage = invocationOnMock.getArgument(1);
+            long quotaUsage = invocationOnMock.getArgument(2);
+            if (rate.getRemaining() != null) {
+                rate.setRemaining(Math.max(-1L, rate.getRemaining() - limitUsage));
+            }
+            if (rate.getRemainingQuota() != null) {
+                rate.setRemainingQuota(Math.max(-1L, rate.getRemainingQuota() - quotaUsage));
+            }
+            return Optional.of(rate);
+        });
+        when(rateLimiterRepository.renew(any(Rate.class), any())).thenAnswer(invocationOnMock -> {
+            Rate rate = invocationOnMock.getArgument(0);
+            Rate stored = repository.get(rate.getKey());
+            if (stored == null || !stored.getExpiration().before(invocationOnMock.getArgument(1))) {
+                return 0;
+            }
             repository.put(rate.getKey(), rate);
-            return rate;
+            return 1;
         });
         when(rateLimiterRepository.findById(any())).thenAnswer(invocationOnMock -> {
             String key = invocationOnMock.getArgument(0);
@@ -36,4 +77,22 @@ public class JpaRateLimiterTest extends BaseRateLimiterTest {
 
         target = new JpaRateLimiter(rateLimiterErrorHandler, rateLimiterRepository);
     }
+
+    @Test
+    public void testConsumeRetriesWhenRenewedConcurrently() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        Rate renewed = new Rate("key", 5L, null, null, new Date(System.currentTimeMillis() + 60_000L), null);
+        // the rate is still missing when consumed, another node stores it before the insert
+        doReturn(Optional.empty(), Optional.of(renewed)).when(rateLimiterRepository)
+            .consume(anyString(), anyLong(), anyLong(), any());
+        doThrow(new DataIntegrityViolationException("key")).when(rateLimiterRepository).insert(any(Rate.class));
+
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate).isSameAs(renewed);
+        verify(rateLimiterRepository, times(2)).consume(eq("key"), eq(1L), eq(0L), any());
+        verify(rateLimiterRepository, never()).save(any(Rate.class));
+        verifyNoInteractions(rateLimiterErrorHandler);
+    }
 }
\ No newline at end of file
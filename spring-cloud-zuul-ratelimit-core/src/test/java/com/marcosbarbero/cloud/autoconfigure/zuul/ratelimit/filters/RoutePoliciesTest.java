@@ -0,0 +1,110 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.ALREADY_LIMITED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.netflix.zuul.context.RequestContext;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+public class RoutePoliciesTest {
+
+    private HttpServletRequest request;
+    private RateLimitUtils rateLimitUtils;
+    private Route route;
+
+    @BeforeEach
+    public void setUp() {
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        rateLimitUtils = mock(RateLimitUtils.class);
+        when(rateLimitUtils.getUser(request)).thenReturn("user");
+        route = new Route("serviceA", "/test", "serviceA", "/serviceA", null, null);
+        RequestContext requestContext = new RequestContext();
+        requestContext.setRequest(request);
+        RequestContext.testSetCurrentContext(requestContext);
+    }
+
+    @Test
+    public void testMatchEvaluatesSharedMatchTypeOnce() {
+        List<Policy> policies = Lists.newArrayList(
+                policy(false, new MatchType(RateLimitType.USER, "user"), new MatchType(RateLimitType.HTTP_METHOD, "GET")),
+                policy(false, new MatchType(RateLimitType.USER, "user")),
+                policy(false, new MatchType(RateLimitType.USER, "other")));
+
+        List<Policy> matched = RoutePolicies.compile(policies).match(request, route, rateLimitUtils);
+
+        assertThat(matched).containsExactly(policies.get(0), policies.get(1));
+        verify(rateLimitUtils, times(1)).getUser(request);
+    }
+
+    @Test
+    public void testMatchSkipsPoliciesAfterBreakOnMatch() {
+        List<Policy> policies = Lists.newArrayList(
+                policy(true, new MatchType(RateLimitType.HTTP_METHOD, "POST")),
+                policy(true, new MatchType(RateLimitType.HTTP_METHOD, "GET")),
+                policy(false));
+
+        List<Policy> matched = RoutePolicies.compile(policies).match(request, route, rateLimitUtils);
+
+        assertThat(matched).containsExactly(policies.get(1));
+        assertThat(RequestContext.getCurrentContext().get(ALREADY_LIMITED)).isEqualTo(true);
+    }
+
+    @Test
+    public void testMatchUrlAgainstPathOfEachRequest() {
+        List<Policy> policies = Lists.newArrayList(
+                policy(false, new MatchType(RateLimitType.URL, "/other")),
+                policy(false, new MatchType(RateLimitType.URL, "/te")));
+        RoutePolicies target = RoutePolicies.compile(policies);
+        Route other = new Route("serviceA", "/other", "serviceA", "/serviceA", null, null);
+
+        assertThat(target.match(request, route, rateLimitUtils)).containsExactly(policies.get(1));
+        assertThat(target.match(request, other, rateLimitUtils)).containsExactly(policies.get(0));
+    }
+
+    @Test
+    public void testMatchUrlPatternsTogether() {
+        when(request.getRequestURI()).thenReturn("/serviceA/resource/1");
+        List<Policy> policies = Lists.newArrayList(
+                policy(false, new MatchType(RateLimitType.URL_PATTERN, "/serviceA/other/**")),
+                policy(false, new MatchType(RateLimitType.URL_PATTERN, "/serviceA/resource/*")),
+                policy(false, new MatchType(RateLimitType.URL_PATTERN, "/**/resource/*"),
+                        new MatchType(RateLimitType.HTTP_METHOD, "POST")));
+
+        List<Policy> matched = RoutePolicies.compile(policies).match(request, route, rateLimitUtils);
+
+        assertThat(matched).containsExactly(policies.get(1));
+        verify(request, times(1)).getRequestURI();
+    }
+
+    @Test
+    public void testIsCompiledFrom() {
+        List<Policy> policies = Lists.newArrayList(policy(false));
+        RoutePolicies target = RoutePolicies.compile(policies);
+
+        assertThat(target.isCompiledFrom(policies)).isTrue();
+        assertThat(target.isCompiledFrom(Lists.newArrayList(policies))).isFalse();
+        policies.set(0, policy(false));
+        assertThat(target.isCompiledFrom(policies)).isFalse();
+    }
+
+    private Policy policy(boolean breakOnMatch, MatchType... types) {
+        Policy policy = new Policy();
+        policy.setBreakOnMatch(breakOnMatch);
+        policy.setType(Lists.newArrayList(types));
+        return policy;
+    }
+}
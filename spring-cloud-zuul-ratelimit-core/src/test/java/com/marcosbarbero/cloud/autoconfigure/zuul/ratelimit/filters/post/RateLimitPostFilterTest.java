@@ -1,10 +1,13 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.post;
 
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_KEYS;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
@@ -17,6 +20,7 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.Ra
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPostFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.WriteBehindQuotaQueue;
 import com.netflix.zuul.context.RequestContext;
 import java.time.Duration;
 import javax.servlet.http.HttpServletRequest;
@@ -50,6 +54,8 @@ public class RateLimitPostFilterTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        when(rateLimiter.consumeAll(any(), any(), any())).thenCallRealMethod();
+        doCallRealMethod().when(rateLimiter).consumeAllAsync(any(), any(), any());
         when(httpServletRequest.getContextPath()).thenReturn("/servicea/test");
         when(httpServletRequest.getRequestURI()).thenReturn("/servicea/test");
         RequestContext requestContext = new RequestContext();
@@ -121,4 +127,35 @@ public class RateLimitPostFilterTest {
         target.run();
         verify(rateLimiter).consume(eq(defaultPolicy), eq("generatedKey"), anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRunWriteBehind() {
+        WriteBehindQuotaQueue writeBehindQuotaQueue = mock(WriteBehindQuotaQueue.class);
+        target = new RateLimitPostFilter(rateLimitProperties, routeLocator, new UrlPathHelper(), rateLimiter,
+                rateLimitKeyGenerator, new DefaultRateLimitUtils(rateLimitProperties), writeBehindQuotaQueue);
+        rateLimitProperties.setEnabled(true);
+        when(httpServletRequest.getAttribute(REQUEST_START_TIME)).thenReturn(System.currentTimeMillis());
+        Policy defaultPolicy = new Policy();
+        defaultPolicy.setQuota(Duration.ofSeconds(2));
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+        when(rateLimitKeyGenerator.key(any(), any(), any())).thenReturn("generatedKey");
+
+        target.run();
+        verify(writeBehindQuotaQueue).offer(eq(defaultPolicy), eq("generatedKey"), anyLong());
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    public void testRunReusesKeysOfPreFilter() {
+        rateLimitProperties.setEnabled(true);
+        when(httpServletRequest.getAttribute(REQUEST_START_TIME)).thenReturn(System.currentTimeMillis());
+        Policy defaultPolicy = new Policy();
+        defaultPolicy.setQuota(Duration.ofSeconds(2));
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+        RequestContext.getCurrentContext().put(CURRENT_REQUEST_KEYS, Lists.newArrayList("preFilterKey"));
+
+        target.run();
+        verify(rateLimiter).consume(eq(defaultPolicy), eq("preFilterKey"), anyLong());
+        verifyNoInteractions(rateLimitKeyGenerator);
+    }
+}
@@ -4,13 +4,15 @@ import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateL
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.ecwid.consul.v1.ConsulClient;
 import com.ecwid.consul.v1.Response;
-import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.GetBinaryValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ConsulRateLimiter;
@@ -38,6 +40,8 @@ public class ConsulRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     public void setUp() {
         RateLimiterErrorHandler rateLimiterErrorHandler = mock(RateLimiterErrorHandler.class);
         consulClient = mock(ConsulClient.class);
+        when(consulClient.setKVBinaryValue(anyString(), any(), any(PutParams.class)))
+            .thenReturn(new Response<>(true, 1L, true, 1L));
         this.setRateLimiter(new ConsulRateLimiter(rateLimiterErrorHandler, this.consulClient, this.objectMapper));
         super.setUp();
     }
@@ -46,11 +50,11 @@ public class ConsulRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimitExceedCapacity() throws Exception {
-        Response<GetValue> response = mock(Response.class);
-        GetValue getValue = mock(GetValue.class);
-        when(this.consulClient.getKVValue(anyString())).thenReturn(response);
+        Response<GetBinaryValue> response = mock(Response.class);
+        GetBinaryValue getValue = mock(GetBinaryValue.class);
+        when(this.consulClient.getKVBinaryValue(anyString())).thenReturn(response);
         when(response.getValue()).thenReturn(getValue);
-        when(getValue.getDecodedValue()).thenReturn(this.objectMapper.writeValueAsString(this.rate(-1)));
+        when(getValue.getValue()).thenReturn(this.objectMapper.writeValueAsBytes(this.rate(-1)));
         super.testRateLimitExceedCapacity();
     }
 
@@ -58,11 +62,11 @@ public class ConsulRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimit() throws Exception {
-        Response<GetValue> response = mock(Response.class);
-        GetValue getValue = mock(GetValue.class);
-        when(this.consulClient.getKVValue(anyString())).thenReturn(response);
+        Response<GetBinaryValue> response = mock(Response.class);
+        GetBinaryValue getValue = mock(GetBinaryValue.class);
+        when(this.consulClient.getKVBinaryValue(anyString())).thenReturn(response);
         when(response.getValue()).thenReturn(getValue);
-        when(getValue.getDecodedValue()).thenReturn(this.objectMapper.writeValueAsString(this.rate(1)));
+        when(getValue.getValue()).thenReturn(this.objectMapper.writeValueAsBytes(this.rate(1)));
 
         this.request.setRequestURI("/serviceA");
         this.request.setRemoteAddr("10.0.0.100");
@@ -79,7 +83,7 @@ public class ConsulRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
 
         TimeUnit.SECONDS.sleep(2);
 
-        when(getValue.getDecodedValue()).thenReturn(this.objectMapper.writeValueAsString(this.rate(2)));
+        when(getValue.getValue()).thenReturn(this.objectMapper.writeValueAsBytes(this.rate(2)));
         this.filter.run();
         remaining = this.response.getHeader(HEADER_REMAINING + key);
         assertEquals("1", remaining);
@@ -0,0 +1,24 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.pre;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+public class InMemoryRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
+
+    private InMemoryRateLimiter rateLimiter;
+
+    @BeforeEach
+    @Override
+    public void setUp() {
+        rateLimiter = new InMemoryRateLimiter(Duration.ofSeconds(60));
+        this.setRateLimiter(rateLimiter);
+        super.setUp();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        rateLimiter.destroy();
+    }
+}
@@ -1,6 +1,9 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.pre;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -12,6 +15,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import org.junit.jupiter.api.BeforeEach;
+import org.springframework.dao.DataIntegrityViolationException;
 
 /**
  * @author Marcos Barbero
@@ -24,10 +28,36 @@ public class JpaLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     public void setUp() {
         Map<String, Rate> repository = new ConcurrentHashMap<>();
         RateLimiterRepository rateLimiterRepository = mock(RateLimiterRepository.class);
-        when(rateLimiterRepository.save(any(Rate.class))).thenAnswer(invocationOnMock -> {
+        doAnswer(invocationOnMock -> {
             Rate rate = invocationOnMock.getArgument(0);
+            if (repository.putIfAbsent(rate.getKey(), rate) != null) {
+                throw new DataIntegrityViolationException(rate.getKey());
+            }
+            return null;
+        }).when(rateLimiterRepository).insert(any(Rate.class));
+        when(rateLimiterRepository.consume(anyString(), anyLong(), anyLong(), any())).thenAnswer(invocationOnMock -> {
+            Rate rate = repository.get(invocationOnMock.<String>getArgument(0));
+            if (rate == null || rate.getExpiration().before(invocationOnMock.getArgument(3))) {
+                return Optional.empty();
+            }
+            long limitUsage = invocationOnMock.getArgument(1);
+            long quotaUsage = invocationOnMock.getArgument(2);
+            if (rate.getRemaining() != null) {
+                rate.setRemaining(Math.max(-1L, rate.getRemaining() - limitUsage));
+            }
+            if (rate.getRemainingQuota() != null) {
+                rate.setRemainingQuota(Math.max(-1L, rate.getRemainingQuota() - quotaUsage));
+            }
+            return Optional.of(rate);
+        });
+        when(rateLimiterRepository.renew(any(Rate.class), any())).thenAnswer(invocationOnMock -> {
+            Rate rate = invocationOnMock.getArgument(0);
+            Rate stored = repository.get(rate.getKey());
+            if (stored == null || !stored.getExpiration().before(invocationOnMock.getArgument(1))) {
+                return 0;
+            }
             repository.put(rate.getKey(), rate);
-            return rate;
+            return 1;
         });
         when(rateLimiterRepository.findById(any())).thenAnswer(invocationOnMock -> {
             String key = invocationOnMock.getArgument(0);
@@ -38,7 +38,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class RateLimitPreFilterTest {
@@ -65,6 +68,7 @@ public class RateLimitPreFilterTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        when(rateLimiter.consumeAll(any(), any(), any())).thenCallRealMethod();
         CounterFactory.initialize(new EmptyCounterFactory());
 
         when(httpServletRequest.getContextPath()).thenReturn("");
@@ -150,4 +154,52 @@ public class RateLimitPreFilterTest {
         assertNotNull(rateLimitEvent);
         assertEquals(policy, rateLimitEvent.getPolicy());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testShouldConsumeAllPoliciesAtOnce() {
+        rateLimitProperties.setEnabled(true);
+
+        Policy urlPolicy = new Policy();
+        urlPolicy.setLimit(10L);
+        urlPolicy.getType().add(new MatchType(RateLimitType.URL, "/test"));
+        Policy originPolicy = new Policy();
+        originPolicy.setLimit(20L);
+        originPolicy.getType().add(new MatchType(RateLimitType.ORIGIN, "127.0.0.1"));
+        rateLimitProperties.getPolicyList().put("servicea", Lists.newArrayList(urlPolicy, originPolicy));
+
+        when(rateLimitKeyGenerator.key(any(), any(), eq(urlPolicy))).thenReturn("url");
+        when(rateLimitKeyGenerator.key(any(), any(), eq(originPolicy))).thenReturn("origin");
+        doReturn(Lists.newArrayList(new Rate("url", 9L, null, 60L, null, 10L), new Rate("origin", 19L, null, 60L, null, 20L)))
+                .when(rateLimiter).consumeAll(any(), any(), any());
+
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        target.run();
+
+        verify(rateLimiter).consumeAll(Lists.newArrayList(urlPolicy, originPolicy),
+                Lists.newArrayList("url", "origin"), null);
+        verifyNoMoreInteractions(rateLimiter);
+    }
+
+    @Test
+    public void testShouldNotConsumePoliciesFollowingExceededOne() {
+        rateLimitProperties.setEnabled(true);
+
+        Policy urlPolicy = new Policy();
+        urlPolicy.setLimit(10L);
+        urlPolicy.getType().add(new MatchType(RateLimitType.URL, "/test"));
+        Policy originPolicy = new Policy();
+        originPolicy.setLimit(20L);
+        originPolicy.getType().add(new MatchType(RateLimitType.ORIGIN, "127.0.0.1"));
+        rateLimitProperties.getPolicyList().put("servicea", Lists.newArrayList(urlPolicy, originPolicy));
+
+        when(rateLimitKeyGenerator.key(any(), any(), eq(urlPolicy))).thenReturn("url");
+        when(rateLimitKeyGenerator.key(any(), any(), eq(originPolicy))).thenReturn("origin");
+        when(rateLimiter.consume(urlPolicy, "url", null)).thenReturn(new Rate("url", -1L, null, 60L, null, 10L));
+
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        assertThrows(RateLimitExceededException.class, () -> target.run());
+
+        verify(rateLimiter).consume(urlPolicy, "url", null);
+        verify(rateLimiter, never()).consume(eq(originPolicy), any(), any());
+    }
+}
@@ -4,7 +4,6 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.Ra
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RedisRateLimiter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import java.util.Arrays;
@@ -32,9 +31,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
         redisTemplate = mock(StringRedisTemplate.class);
         RateLimiterErrorHandler rateLimiterErrorHandler = mock(RateLimiterErrorHandler.class);
         this.setRateLimiter(new RedisRateLimiter(rateLimiterErrorHandler, this.redisTemplate));
-        doReturn(1L).when(redisTemplate).execute((RedisCallback<Object>) any());
-        doReturn(Arrays.asList(1L, 1L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(1L, 1L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
         super.setUp();
     }
 
@@ -42,10 +40,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimitExceedCapacity() throws Exception {
-        doReturn(3L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
-        doReturn(Arrays.asList(-1L, 1L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(-1L, 1L, 1L, 3L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
 
         super.testRateLimitExceedCapacity();
     }
@@ -54,11 +50,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimit() throws Exception {
-        doReturn(1L, 2L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
-        doReturn(Arrays.asList(0L, 2L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
-        doReturn(1L).when(redisTemplate).execute((RedisCallback<Object>) any());
+        doReturn(Arrays.asList(0L, 2L, 1L, 2L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
 
 
         this.request.setRequestURI("/serviceA");
@@ -76,8 +69,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
 
         TimeUnit.SECONDS.sleep(2);
 
-        doReturn(Arrays.asList(1L, 2L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(1L, 2L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
 
         this.filter.run();
         remaining = this.response.getHeader(HEADER_REMAINING + key);
@@ -86,8 +79,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
 
     @Test
     public void testShouldReturnCorrectRateRemainingValue() {
-        doReturn(Arrays.asList(1L, 2L), Arrays.asList(0L,2L))
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString());
+        doReturn(Arrays.asList(1L, 2L, 1L, 0L), Arrays.asList(0L, 2L, 1L, 0L))
+                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString(), anyString(), anyString(), anyString());
 
         this.request.setRequestURI("/serviceA");
         this.request.setRemoteAddr("10.0.0.100");
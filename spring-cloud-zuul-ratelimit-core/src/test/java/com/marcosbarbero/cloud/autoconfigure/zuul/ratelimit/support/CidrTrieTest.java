@@ -0,0 +1,92 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+public class CidrTrieTest {
+
+    @Test
+    public void testContainsIpv4Blocks() {
+        CidrTrie target = CidrTrie.of(Lists.newArrayList("127.0.0.8/29", "10.0.0.0/8", "192.168.1.1"));
+
+        assertThat(target.contains("127.0.0.8")).isTrue();
+        assertThat(target.contains("127.0.0.15")).isTrue();
+        assertThat(target.contains("127.0.0.16")).isFalse();
+        assertThat(target.contains("10.255.255.255")).isTrue();
+        assertThat(target.contains("11.0.0.0")).isFalse();
+        assertThat(target.contains("192.168.1.1")).isTrue();
+        assertThat(target.contains("192.168.1.2")).isFalse();
+    }
+
+    @Test
+    public void testContainsIpv6Blocks() {
+        CidrTrie target = CidrTrie.of(Lists.newArrayList("2001:db8::/32", "::1", "fe80::1:2:3:4/128"));
+
+        assertThat(target.contains("2001:db8:ffff::1")).isTrue();
+        assertThat(target.contains("2001:0DB8:0:0:0:0:0:0")).isTrue();
+        assertThat(target.contains("2001:db9::")).isFalse();
+        assertThat(target.contains("0:0:0:0:0:0:0:1")).isTrue();
+        assertThat(target.contains("[::1]")).isTrue();
+        assertThat(target.contains("fe80::1:2:3:4%eth0")).isTrue();
+        assertThat(target.contains("fe80::1:2:3:5")).isFalse();
+    }
+
+    @Test
+    public void testContainsIpv4MappedAddresses() {
+        CidrTrie target = CidrTrie.of(Lists.newArrayList("10.0.0.0/8"));
+
+        assertThat(target.contains("::ffff:10.1.2.3")).isTrue();
+        assertThat(target.contains("::ffff:a01:203")).isTrue();
+        assertThat(target.contains("::ffff:11.1.2.3")).isFalse();
+    }
+
+    @Test
+    public void testContainsOtherOriginsExactly() {
+        CidrTrie target = CidrTrie.of(Lists.newArrayList("somedomain.com"));
+
+        assertThat(target.contains("somedomain.com")).isTrue();
+        assertThat(target.contains("otherdomain.com")).isFalse();
+        assertThat(target.contains(null)).isFalse();
+    }
+
+    @Test
+    public void testCompiledKeepsRecentlyUsedOrigins() {
+        CidrTrie target = CidrTrie.compiled("10.0.0.0/8");
+
+        assertThat(CidrTrie.compiled("10.0.0.0/8")).isSameAs(target);
+        assertThat(target.contains("10.1.2.3")).isTrue();
+        for (int i = 0; i < 256; i++) {
+            CidrTrie.compiled("172.16.0." + i);
+        }
+        assertThat(CidrTrie.compiled("10.0.0.0/8")).isNotSameAs(target);
+    }
+
+    @Test
+    public void testContainsEverythingWithDefaultRoute() {
+        CidrTrie target = CidrTrie.of("0.0.0.0/0");
+
+        assertThat(target.contains("1.2.3.4")).isTrue();
+        assertThat(target.contains("::1")).isFalse();
+    }
+
+    @Test
+    public void testRejectsInvalidAddresses() {
+        CidrTrie target = CidrTrie.of(Lists.newArrayList("1.2.3.4", "::"));
+
+        assertThat(target.contains("1.2.3.256")).isFalse();
+        assertThat(target.contains("1.2.3")).isFalse();
+        assertThat(target.contains("1:2:3:4:5:6:7:8:9")).isFalse();
+        assertThat(target.contains("1::2::3")).isFalse();
+        assertThat(target.contains("12345::")).isFalse();
+        assertThat(target.contains("::")).isTrue();
+    }
+
+    @Test
+    public void testOfInvalidBlock() {
+        assertThatThrownBy(() -> CidrTrie.of("somedomain.com/8")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CidrTrie.of("10.0.0.0/33")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
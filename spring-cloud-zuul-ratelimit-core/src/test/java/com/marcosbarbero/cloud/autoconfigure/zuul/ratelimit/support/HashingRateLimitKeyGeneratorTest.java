@@ -0,0 +1,64 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class HashingRateLimitKeyGeneratorTest {
+
+    private RateLimitKeyGenerator delegate;
+    private HttpServletRequest request;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = mock(RateLimitKeyGenerator.class);
+        request = mock(HttpServletRequest.class);
+    }
+
+    @Test
+    public void testKeyHasFixedWidth() {
+        HashingRateLimitKeyGenerator target = new HashingRateLimitKeyGenerator(delegate, "prefix");
+        when(delegate.key(any(), any(), any())).thenReturn("prefix:id:short", "prefix:id:" + StringUtils.repeat('x', 4096));
+
+        String shortKey = target.key(request, null, new Policy());
+        String longKey = target.key(request, null, new Policy());
+
+        assertThat(shortKey).startsWith("prefix:").hasSize("prefix:".length() + 22);
+        assertThat(longKey).startsWith("prefix:").hasSize(shortKey.length()).isNotEqualTo(shortKey);
+    }
+
+    @Test
+    public void testKeyIsStable() {
+        HashingRateLimitKeyGenerator target = new HashingRateLimitKeyGenerator(delegate, "prefix");
+        when(delegate.key(any(), any(), any())).thenReturn("prefix:id:key");
+
+        assertThat(target.key(request, null, new Policy())).isEqualTo(target.key(request, null, new Policy()));
+    }
+
+    @Test
+    public void testReverseLookup() {
+        HashingRateLimitKeyGenerator target = new HashingRateLimitKeyGenerator(delegate, "prefix", 10);
+        when(delegate.key(any(), any(), any())).thenReturn("prefix:id:key");
+
+        String hashedKey = target.key(request, null, new Policy());
+
+        assertThat(target.getGeneratedKey(hashedKey)).isEqualTo("prefix:id:key");
+        assertThat(target.getGeneratedKey("prefix:unknown")).isNull();
+    }
+
+    @Test
+    public void testReverseLookupDisabled() {
+        HashingRateLimitKeyGenerator target = new HashingRateLimitKeyGenerator(delegate, "prefix");
+        when(delegate.key(any(), any(), any())).thenReturn("prefix:id:key");
+
+        assertThat(target.getGeneratedKey(target.key(request, null, new Policy()))).isNull();
+    }
+}
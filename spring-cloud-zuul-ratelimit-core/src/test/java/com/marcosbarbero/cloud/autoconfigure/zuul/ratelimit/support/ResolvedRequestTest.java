@@ -0,0 +1,59 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Sets;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.netflix.zuul.context.RequestContext;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ResolvedRequestTest {
+
+    private HttpServletRequest request;
+    private RateLimitUtils rateLimitUtils;
+
+    @BeforeEach
+    public void setUp() {
+        request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestURI()).thenReturn("/resource");
+        rateLimitUtils = mock(RateLimitUtils.class);
+        when(rateLimitUtils.getRemoteAddress(request)).thenReturn("10.0.0.1");
+        when(rateLimitUtils.getUser(request)).thenReturn("user");
+        when(rateLimitUtils.getUserRoles()).thenReturn(Sets.newHashSet("ADMIN"));
+        RequestContext.testSetCurrentContext(new RequestContext());
+    }
+
+    @Test
+    public void testAttributesResolvedOncePerRequest() {
+        for (int i = 0; i < 3; i++) {
+            ResolvedRequest target = ResolvedRequest.of(request, rateLimitUtils);
+            assertThat(target.getRemoteAddress()).isEqualTo("10.0.0.1");
+            assertThat(target.getUser()).isEqualTo("user");
+            assertThat(target.getUserRoles()).containsExactly("ADMIN");
+            assertThat(target.getMethod()).isEqualTo("GET");
+            assertThat(target.getPath()).isEqualTo("/resource");
+        }
+
+        verify(rateLimitUtils, times(1)).getRemoteAddress(request);
+        verify(rateLimitUtils, times(1)).getUser(request);
+        verify(rateLimitUtils, times(1)).getUserRoles();
+        verify(request, times(1)).getMethod();
+        verify(request, times(1)).getRequestURI();
+    }
+
+    @Test
+    public void testAttributesResolvedAgainForOtherRequest() {
+        HttpServletRequest other = mock(HttpServletRequest.class);
+        when(rateLimitUtils.getRemoteAddress(other)).thenReturn("10.0.0.2");
+
+        assertThat(ResolvedRequest.of(request, rateLimitUtils).getRemoteAddress()).isEqualTo("10.0.0.1");
+        assertThat(ResolvedRequest.of(other, rateLimitUtils).getRemoteAddress()).isEqualTo("10.0.0.2");
+    }
+}
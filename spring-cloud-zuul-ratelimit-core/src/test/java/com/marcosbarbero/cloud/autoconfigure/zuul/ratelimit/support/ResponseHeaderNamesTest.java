@@ -0,0 +1,51 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class ResponseHeaderNamesTest {
+
+    private final ResponseHeaderNames target = new ResponseHeaderNames(10);
+
+    @Test
+    public void testStandard() {
+        assertThat(target.standard()[ResponseHeaderNames.LIMIT]).isEqualTo(HEADER_LIMIT);
+        assertThat(target.standard()[ResponseHeaderNames.RESET]).isEqualTo(HEADER_RESET);
+    }
+
+    @Test
+    public void testVerboseIsCached() {
+        String[] names = target.verbose("rate-limit-application_serviceA_127.0.0.1");
+
+        assertThat(names[ResponseHeaderNames.LIMIT]).isEqualTo(HEADER_LIMIT + "-rate-limit-application_serviceA_127.0.0.1");
+        assertThat(target.verbose("rate-limit-application_serviceA_127.0.0.1")).isSameAs(names);
+    }
+
+    @Test
+    public void testSanitize() {
+        assertThat(ResponseHeaderNames.sanitize("key-1.2")).isEqualTo("key-1.2");
+        assertThat(ResponseHeaderNames.sanitize("a:b/c")).isEqualTo("a_b_c");
+        assertThat(ResponseHeaderNames.sanitize("a::b")).isEqualTo("a_b");
+        assertThat(ResponseHeaderNames.sanitize("a:::b")).isEqualTo("a__b");
+        assertThat(ResponseHeaderNames.sanitize("a::::b")).isEqualTo("a__b");
+        assertThat(ResponseHeaderNames.sanitize("")).isEmpty();
+    }
+
+    @Test
+    public void testSanitizeLikeRegularExpressions() {
+        Random random = new Random(42);
+        char[] alphabet = "aZ9-._:/ é😀".toCharArray();
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int j = random.nextInt(12); j > 0; j--) {
+                key.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String expected = key.toString().replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_");
+            assertThat(ResponseHeaderNames.sanitize(key.toString())).isEqualTo(expected);
+        }
+    }
+}
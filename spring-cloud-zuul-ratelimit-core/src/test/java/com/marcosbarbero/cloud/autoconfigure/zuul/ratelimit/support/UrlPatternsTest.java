@@ -0,0 +1,55 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+public class UrlPatternsTest {
+
+    private final UrlPatterns target = UrlPatterns.of(Lists.newArrayList(
+            "/resource/*/specific", "/Other/**", "/**/specific", "/{name}/item", "/resource/??"));
+
+    @Test
+    public void testMatchChecksEveryPattern() {
+        boolean[] matches = new boolean[target.size()];
+
+        target.match("/resource/abcd/specific", matches);
+
+        assertThat(matches).containsExactly(true, false, true, false, false);
+    }
+
+    @Test
+    public void testMatchIgnoresCase() {
+        boolean[] matches = new boolean[target.size()];
+
+        target.match("/OTHER/path", matches);
+
+        assertThat(matches).containsExactly(false, true, false, false, false);
+    }
+
+    @Test
+    public void testMatchResetsPreviousMatches() {
+        boolean[] matches = {true, true, true, true, true};
+
+        target.match("/", matches);
+
+        assertThat(matches).containsExactly(false, false, false, false, false);
+    }
+
+    @Test
+    public void testMatchPatternsStartingWithVariable() {
+        boolean[] matches = new boolean[target.size()];
+
+        target.match("/resource/item", matches);
+
+        assertThat(matches).containsExactly(false, false, false, true, false);
+    }
+
+    @Test
+    public void testMatchesSinglePattern() {
+        assertThat(UrlPatterns.matches("/Resource/*/specific", "/resource/ABCD/Specific")).isTrue();
+        assertThat(UrlPatterns.matches("/resource/??/specific", "/resource/abcd/specific")).isFalse();
+        assertThat(UrlPatterns.matches("/resource/**", null)).isFalse();
+    }
+}
@@ -0,0 +1,97 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class WriteBehindQuotaQueueTest {
+
+    private RateLimiter rateLimiter;
+    private WriteBehindQuotaQueue target;
+
+    @BeforeEach
+    public void setUp() {
+        rateLimiter = mock(RateLimiter.class);
+        target = new WriteBehindQuotaQueue(rateLimiter, 3, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        target.destroy();
+    }
+
+    @Test
+    public void testFlushCoalescesPerKey() {
+        Policy policy = new Policy();
+        target.offer(policy, "first", 100L);
+        target.offer(policy, "second", 50L);
+        target.offer(policy, "first", 20L);
+
+        target.flush();
+
+        verify(rateLimiter).consume(policy, "first", 120L);
+        verify(rateLimiter).consume(policy, "second", 50L);
+        verifyNoMoreInteractions(rateLimiter);
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void testOfferDropsWhenFull() {
+        Policy policy = new Policy();
+        for (int i = 0; i < 3; i++) {
+            assertThat(target.offer(policy, "key", 1L)).isTrue();
+        }
+
+        assertThat(target.offer(policy, "key", 1L)).isFalse();
+        assertThat(target.size()).isEqualTo(3);
+        assertThat(target.getDropped()).isEqualTo(1L);
+    }
+
+    @Test
+    public void testFlushContinuesAfterFailure() {
+        Policy policy = new Policy();
+        when(rateLimiter.consume(any(), eq("first"), any())).thenThrow(new RuntimeException());
+        target.offer(policy, "first", 1L);
+        target.offer(policy, "second", 1L);
+
+        target.flush();
+
+        verify(rateLimiter).consume(policy, "second", 1L);
+    }
+
+    @Test
+    public void testDestroyFlushesPendingUpdates() throws InterruptedException {
+        Policy policy = new Policy();
+        target.offer(policy, "key", 10L);
+
+        target.destroy();
+
+        verify(rateLimiter).consume(eq(policy), anyString(), eq(10L));
+    }
+
+    @Test
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new WriteBehindQuotaQueueMetrics(target).bindTo(registry);
+        Policy policy = new Policy();
+        for (int i = 0; i < 4; i++) {
+            target.offer(policy, "key", 1L);
+        }
+
+        assertThat(registry.get(WriteBehindQuotaQueueMetrics.QUEUE_SIZE).gauge().value()).isEqualTo(3.0);
+        assertThat(registry.get(WriteBehindQuotaQueueMetrics.DROPPED).functionCounter().count()).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.marcosbarbero.tests.it;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.RateLimiterRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class SpringDataConsumeTestIT {
+
+    private static final int THREADS = 8;
+    private static final int CONSUMES = 10;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+    @Autowired
+    private RateLimiterRepository repository;
+
+    @Test
+    public void testConcurrentConsumeIsNotLost() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.setRefreshInterval(Duration.ofMinutes(1));
+        String key = "consume-concurrent";
+        rateLimiter.consume(policy, key, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < CONSUMES; j++) {
+                        rateLimiter.consume(policy, key, null);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Rate rate = repository.findById(key).orElseThrow(IllegalStateException::new);
+        assertEquals(100L - 1 - THREADS * CONSUMES, rate.getRemaining().longValue());
+    }
+
+    @Test
+    public void testConsumeReadsBackUpdatedRate() {
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        policy.setRefreshInterval(Duration.ofMinutes(1));
+        String key = "consume-read-back";
+
+        assertEquals(1L, rateLimiter.consume(policy, key, null).getRemaining().longValue());
+        assertEquals(0L, rateLimiter.consume(policy, key, null).getRemaining().longValue());
+        assertEquals(-1L, rateLimiter.consume(policy, key, null).getRemaining().longValue());
+        assertEquals(-1L, rateLimiter.consume(policy, key, null).getRemaining().longValue());
+    }
+
+    @Test
+    public void testConsumeSkipsExpiredRate() {
+        String key = "consume-expired";
+        repository.insert(new Rate(key, 0L, null, 0L, new Date(System.currentTimeMillis() - 1_000L), null));
+
+        assertFalse(repository.consume(key, 1L, 0L, new Date()).isPresent());
+
+        Policy policy = new Policy();
+        policy.setLimit(5L);
+        policy.setRefreshInterval(Duration.ofMinutes(1));
+        Rate rate = rateLimiter.consume(policy, key, null);
+        assertEquals(4L, rate.getRemaining().longValue());
+        assertTrue(repository.consume(key, 1L, 0L, new Date()).isPresent());
+    }
+}